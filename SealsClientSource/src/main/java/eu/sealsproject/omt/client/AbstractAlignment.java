@@ -0,0 +1,157 @@
+package eu.sealsproject.omt.client;
+
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * The common interface of the Alignment representations used by the Client
+ * and the Oracle, which allows Alignments stored in different ways to be
+ * combined and evaluated against each other.
+ * 
+ * @author Daniel Faria
+ */
+
+public abstract class AbstractAlignment
+{
+	/**
+	 * Adds a mapping to the Alignment if it is new (i.e., the Alignment
+	 * doesn't contain the mapping or its reverse)
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param r: the mapping relation between the entities
+	 */
+	public abstract void add(String uri1, String uri2, Relation r);
+	
+	/**
+	 * Adds a mapping with the given confidence to the Alignment if it is new
+	 * (Alignments that don't keep confidences add it with confidence 1.0)
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param r: the mapping relation between the entities
+	 * @param confidence: the confidence of the mapping
+	 */
+	public void add(String uri1, String uri2, Relation r, double confidence)
+	{
+		add(uri1, uri2, r);
+	}
+	
+	/**
+	 * Adds all mappings in the given Alignment to this
+	 * @param other: the Alignment to add to this
+	 */
+	public void add(final AbstractAlignment other)
+	{
+		other.forEachMapping(new MappingVisitor()
+		{
+			@Override
+			public void visit(String source, String target, Relation r)
+			{
+				add(source, target, r, other.getConfidence(source, target));
+			}
+		});
+	}
+	
+	/**
+	 * Checks if two entities are mapped in the Alignment
+	 * (in the given direction) regardless of relation
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @return whether uri1 and uri2 are mapped in the Alignment
+	 */
+	public abstract boolean contains(String uri1, String uri2);
+	
+	/**
+	 * Checks if a given mapping (or its reverse) is contained in the Alignment
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param r: the mapping relation between the entities
+	 * @return whether the mapping is contained in the Alignment
+	 */
+	public abstract boolean contains(String uri1, String uri2, Relation r);
+	
+	/**
+	 * @param other: the Alignment to evaluate with this
+	 * @return the classification of the other Alignment using this as
+	 * a reference: {True Positives, False Positives, False Negatives}
+	 */
+	public abstract int[] evaluation(AbstractAlignment other);
+	
+	/**
+	 * Evaluates the other Alignment using this as a reference at every
+	 * distinct confidence threshold of the other Alignment, in a single pass
+	 * @param other: the Alignment to evaluate with this
+	 * @return the classification of the other Alignment at each threshold
+	 */
+	public ThresholdCurve thresholdEvaluation(AbstractAlignment other)
+	{
+		return new ThresholdCurve(this, other);
+	}
+	
+	/**
+	 * Traverses all mappings in the Alignment (each mapping is visited once,
+	 * in the orientation in which it was added, the mappings between the same
+	 * entities are visited one after the other, and the Alignment must not be
+	 * modified during the traversal)
+	 * @param v: the MappingVisitor that receives each mapping
+	 */
+	public void forEachMapping(MappingVisitor v)
+	{
+		for(String source : getSources())
+			for(String target : getTargets(source))
+				for(Relation r : getRelations(source, target))
+					v.visit(source, target, r);
+	}
+	
+	/**
+	 * @return an immutable, read-optimized snapshot of this Alignment
+	 */
+	public FrozenAlignment freeze()
+	{
+		return new FrozenAlignment(this);
+	}
+	
+	/**
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @return the confidence of the mapping between the entities (in either
+	 * direction), or -1 if they aren't mapped
+	 */
+	public double getConfidence(String uri1, String uri2)
+	{
+		if(contains(uri1, uri2) || contains(uri2, uri1))
+			return 1.0;
+		return -1;
+	}
+	
+	/**
+	 * @return the set of source ontology entity URIs in this Alignment
+	 */
+	public abstract Set<String> getSources();
+	
+	/**
+	 * @param source: the source ontology entity URI to retrieve
+	 * @return the set of target ontology entity URIs aligned to
+	 * the given entity in this Alignment
+	 */
+	public abstract Set<String> getTargets(String source);
+	
+	/**
+	 * @param source: the source ontology entity URI to retrieve
+	 * @param target: the target ontology entity URI to retrieve
+	 * @return the relations between the given entities
+	 */
+	public abstract Vector<Relation> getRelations(String source, String target);
+	
+	/**
+	 * Removes a mapping from the Alignment if it exists
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param r: the mapping relation between the entities
+	 */
+	public abstract void remove(String uri1, String uri2, Relation r);
+	
+	/**
+	 * @return the size of the Alignment
+	 */
+	public abstract int size();
+}
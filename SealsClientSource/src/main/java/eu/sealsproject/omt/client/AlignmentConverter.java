@@ -0,0 +1,146 @@
+package eu.sealsproject.omt.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+
+import eu.sealsproject.platform.repos.tdrs.client.TestCaseIterator;
+import eu.sealsproject.platform.repos.tdrs.client.TestDataSuite;
+
+/**
+ * Command line tool that converts alignments (in the RDF Alignment format or
+ * any other format read by the Alignment API) to binary alignment files,
+ * which can then be memory-mapped by the MappedAlignment.
+ * Usage: AlignmentConverter <outputFolder> <alignment|folder> ...
+ * Each alignment 'name.rdf' is converted to 'outputFolder/name.bin', and each
+ * folder is converted recursively (all files ending in '.rdf').
+ * Usage: AlignmentConverter -x <repUri> <suiteId> <versionId> <outputFolder>
+ * The reference alignment of each test case of a suite in the SEALS repository
+ * is converted to a file in the output folder named after the hash of its
+ * repository URL, as the Client's --binref option names them, so the output
+ * folder can be passed to it directly (test case identifiers repeat across
+ * suites and versions, so files named after them are not used by it).
+ *
+ * @author Daniel Faria
+ */
+
+public class AlignmentConverter
+{
+	public static void main(String[] args)
+	{
+		boolean suite = args.length > 0 && args[0].equalsIgnoreCase("-x");
+		if(args.length < 2 || suite && args.length != 5)
+		{
+			System.out.println("Usage: AlignmentConverter <outputFolder> <alignment|folder> ...");
+			System.out.println("       AlignmentConverter -x <repUri> <suiteId> <versionId> <outputFolder>");
+			System.exit(1);
+		}
+		File output = new File(suite ? args[4] : args[0]);
+		if(!output.isDirectory() && !output.mkdirs())
+		{
+			System.err.println("Unable to create output folder " + output);
+			System.exit(1);
+		}
+		int converted = 0;
+		int failed = 0;
+		if(suite)
+		{
+			int[] result = convertSuite(new TestDataSuite(args[1], args[2], args[3]), output);
+			converted = result[0];
+			failed = result[1];
+		}
+		for(int i = 1; !suite && i < args.length; i++)
+		{
+			int[] result = convert(new File(args[i]), output);
+			converted += result[0];
+			failed += result[1];
+		}
+		System.out.println("Converted " + converted + " alignment(s) to " + output +
+				(failed > 0 ? " (" + failed + " failed)" : ""));
+		if(failed > 0)
+			System.exit(2);
+	}
+
+	//Converts the reference alignments of all test cases of a suite (those
+	//without a reference are skipped) and returns the number of alignments
+	//converted and failed
+	private static int[] convertSuite(TestDataSuite tds, File output)
+	{
+		int[] result = new int[2];
+		TestCaseIterator it = tds.getTestCases();
+		while(it.hasNext())
+		{
+			String testCaseId = it.next();
+			URL reference = tds.getDataItem(testCaseId, "reference");
+			if(reference == null)
+				continue;
+			if(convert(reference, Client.binaryReference(output, reference)))
+				result[0]++;
+			else
+				result[1]++;
+		}
+		return result;
+	}
+
+	//Converts an alignment file (or all alignment files in a folder) and
+	//returns the number of alignments converted and failed
+	private static int[] convert(File file, File output)
+	{
+		int[] result = new int[2];
+		if(file.isDirectory())
+		{
+			File[] files = file.listFiles();
+			if(files == null)
+				return result;
+			for(File f : files)
+			{
+				if(f.isDirectory() || f.getName().endsWith(".rdf"))
+				{
+					int[] r = convert(f, f.isDirectory() ? new File(output, f.getName()) : output);
+					result[0] += r[0];
+					result[1] += r[1];
+				}
+			}
+			return result;
+		}
+		String name = file.getName();
+		if(name.lastIndexOf('.') > 0)
+			name = name.substring(0, name.lastIndexOf('.'));
+		File bin = new File(output, name + ".bin");
+		try
+		{
+			if(convert(file.toURI().toURL(), bin))
+				result[0]++;
+			else
+				result[1]++;
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to convert " + file + " - " + e.getMessage());
+			result[1]++;
+		}
+		return result;
+	}
+
+	//Converts an alignment to the given binary file and returns whether it succeeded
+	private static boolean convert(URL alignment, File bin)
+	{
+		try
+		{
+			AbstractAlignment a = Client.loadAlignment(alignment, new TestCase(null));
+			if(a == null)
+				return false;
+			File output = bin.getParentFile();
+			if(!output.isDirectory() && !output.mkdirs())
+				throw new IOException("Unable to create folder " + output);
+			MappedAlignment.write(a, bin);
+			System.out.println(alignment + " -> " + bin + " (" + a.size() + " mappings)");
+			return true;
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to convert " + alignment + " - " + e.getMessage());
+			return false;
+		}
+	}
+}
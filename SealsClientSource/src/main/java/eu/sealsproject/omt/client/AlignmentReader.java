@@ -0,0 +1,135 @@
+package eu.sealsproject.omt.client;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * A streaming reader for alignments in the RDF Alignment format, which
+ * adds each Cell to an Alignment as soon as it is read, rather than
+ * building the full Alignment API object graph first. Alignments that
+ * it can't read (in other formats, or with relations it doesn't know) are
+ * rejected, so that they can be parsed with the Alignment API instead.
+ * 
+ * @author Daniel Faria
+ */
+
+public class AlignmentReader
+{
+	private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+	static
+	{
+		FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+	
+	/**
+	 * Reads an alignment in the RDF Alignment format
+	 * @param in: the input stream from which to read the alignment
+	 * @param a: the Alignment to which to add the mappings read
+	 * @throws XMLStreamException if the input is not an alignment in the
+	 * RDF Alignment format, or has a relation that isn't a known Relation
+	 * (in which case the mappings before it have been added)
+	 */
+	public static void read(InputStream in, AbstractAlignment a) throws XMLStreamException
+	{
+		XMLStreamReader reader;
+		synchronized(FACTORY)
+		{
+			reader = FACTORY.createXMLStreamReader(in);
+		}
+		try
+		{
+			reader.nextTag();
+			if(!reader.getLocalName().equals("RDF") || !RDF.equals(reader.getNamespaceURI()))
+				throw new XMLStreamException("Not an RDF document");
+			boolean isAlignment = false;
+			//The Cell being read
+			String uri1 = null;
+			String uri2 = null;
+			String rel = null;
+			double measure = 1.0;
+			//Whether the entity being read is given by a nested rdf:about
+			int entity = 0;
+			while(reader.hasNext())
+			{
+				int event = reader.next();
+				if(event == XMLStreamConstants.START_ELEMENT)
+				{
+					String name = reader.getLocalName();
+					if(name.equals("Alignment"))
+						isAlignment = true;
+					else if(name.equals("Cell"))
+					{
+						uri1 = null;
+						uri2 = null;
+						rel = null;
+						measure = 1.0;
+						entity = 0;
+					}
+					else if(name.equals("entity1") || name.equals("entity2"))
+					{
+						String uri = getResource(reader, "resource");
+						if(uri == null)
+							entity = name.equals("entity1") ? 1 : 2;
+						else if(name.equals("entity1"))
+							uri1 = uri;
+						else
+							uri2 = uri;
+					}
+					else if(entity > 0 && getResource(reader, "about") != null)
+					{
+						if(entity == 1)
+							uri1 = getResource(reader, "about");
+						else
+							uri2 = getResource(reader, "about");
+						entity = 0;
+					}
+					else if(name.equals("relation"))
+						rel = reader.getElementText().trim();
+					else if(name.equals("measure"))
+					{
+						String m = reader.getElementText().trim();
+						try
+						{
+							measure = Double.parseDouble(m);
+						}
+						catch(NumberFormatException e)
+						{
+							System.err.println("Error reading alignment: invalid measure '" + m + "'");
+						}
+					}
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("Cell"))
+				{
+					if(uri1 == null || uri2 == null || rel == null)
+						System.err.println("Error reading alignment: incomplete Cell");
+					else if(Relation.parse(rel) == null)
+						throw new XMLStreamException("Unknown relation '" + rel + "'");
+					else
+						a.add(uri1, uri2, Relation.parse(rel), measure);
+				}
+			}
+			if(!isAlignment)
+				throw new XMLStreamException("Not an RDF alignment");
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+	
+	//Gets the value of an rdf:resource/rdf:about attribute (or of
+	//the attribute with the same name and no namespace)
+	private static String getResource(XMLStreamReader reader, String attribute)
+	{
+		String uri = reader.getAttributeValue(RDF, attribute);
+		if(uri == null)
+			uri = reader.getAttributeValue("", attribute);
+		return uri;
+	}
+}
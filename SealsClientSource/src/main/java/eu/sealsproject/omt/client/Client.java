@@ -1,23 +1,45 @@
 package eu.sealsproject.omt.client;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.semanticweb.owl.align.Alignment;
 import org.semanticweb.owl.align.AlignmentException;
 
 import eu.sealsproject.domain.omt.metadata.rrs.Content;
+import eu.sealsproject.omt.client.interactive.LatencyModel;
 import eu.sealsproject.omt.client.interactive.Oracle;
 import eu.sealsproject.platform.repos.tdrs.client.TestCaseIterator;
 import eu.sealsproject.platform.repos.tdrs.client.TestDataSuite;
@@ -55,32 +77,82 @@ public class Client
 	{
 		PREDEF, PREDEFI, PARAM, PARAMI, SUITE
 	}
+	//Alignment storage
+	public enum Store
+	{
+		HASH, COMPACT, OFFHEAP
+	}
+	//Runs a prefetched test case of a suite (and evaluates it)
+	interface TestCaseRunner
+	{
+		TestCase run(TestCase tc);
+	}
 	//Parameters
 	private static Mode mode = null;
 	private static String outRawResultFolder = null;
-	private static URL source = null;
-	private static URL target = null;
-	private static URL reference = null;
-	private static URL input = null;
-	private static URL alignment = null;
+	private static TestCase task = null;
 	private static String tdrsLocation = null;
 	private static String testDataCollectionName = null;
 	private static String testDataVersionNumber = null;
-	private static String testCaseId = null;
 	private static String resultsId = null;
 	private static String toolName = null;
 	private static boolean interactive = false;
+	private static double errorRate = 0.0;
+	//Seed of the Oracle's simulated errors (random if not given)
+	private static Long seed = null;
+	//Time the simulated user takes to answer the Oracle (null for immediate answers)
+	private static LatencyModel latency = null;
+	//Whether to log every Oracle request interval (besides their percentiles)
+	private static boolean intervalLog = false;
+	//Port of the Oracle server for out-of-process matchers (-1 if not served,
+	//0 for any free port)
+	private static int oraclePort = -1;
+	private static String oracleAddress = null;
 	private static boolean automated = false;
+	//How the package is deployed into SEALS_HOME, and whether it is kept there at the end
+	private static Helper.Link link = Helper.Link.COPY;
+	private static boolean keep = false;
 	private static boolean skipTestsWithoutRefAlign = true;
 	private static IOntologyMatchingToolBridge bridge;
 	private static File packagePath;
+	//Matcher worker processes (-x mode)
+	private static int workers = 0;
+	private static WorkerPool workerPool = null;
 	private static File outputFile = null;
-	//Reference Alignments (normal and oracle)
-	private static HashAlignment refAlign = null;
-	private static HashAlignment oracleAlign = null;
+	//Whether to evaluate the output alignments at each confidence threshold (-x mode)
+	private static boolean curves = false;
+	//Storage of the reference and output alignments (-x mode)
+	private static Store store = Store.HASH;
+	//Size (in bytes) above which alignment files are stored off-heap (0 for never)
+	private static long offHeapThreshold = 0;
+	//Folder of the binary (memory-mapped) copies of the reference alignments (-x mode)
+	private static File binRefFolder = null;
+	//Local cache of the repository's data items (-x mode)
+	private static File cacheFolder = null;
+	private static boolean offline = false;
+	private static DataCache cache = null;
+	//Whether to resume an interrupted suite run from its journal (-x mode)
+	private static boolean resume = false;
+	//Number of test cases to run concurrently (-x mode)
+	private static int threads = 1;
+	//Time limit for each matching task in milliseconds (0 for no limit)
+	private static long timeout = 0;
+	//Runs the matching tasks when there is a time limit; the threads are daemons
+	//so that a tool that ignores the interruption doesn't keep the Client alive
+	private static ExecutorService watchdog = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		public Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "matching-task");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+	//Number of test cases to prefetch ahead of the running ones (-x mode)
+	private static int lookAhead = 0;
 	//Evaluation Parameters
-	private static long runTime = 0;
 	private static long totalRunTime = 0;
+	private static long totalPrefetchTime = 0;
 	private static int[] classification = null;
 	private static int[] oracleClassification = null;
 
@@ -91,7 +163,7 @@ public class Client
 		if(args.length == 1 && (args[0].equalsIgnoreCase("-h") || args[0].equalsIgnoreCase("--help")))
 			printHelpMessage();
 		//Otherwise exit if the number of parameters is illegal
-		else if(args.length < 2 || args.length == 3 || args.length > 13)
+		else if(args.length < 2 || args.length == 3)
 			printArgError();
 		
 		//The first argument needs to be the location of the tool
@@ -113,6 +185,8 @@ public class Client
 			printArgError();
 
 		//Process the remaining arguments according to the mode
+		if(!mode.equals(Mode.SUITE))
+			task = new TestCase(null);
 		switch(mode)
 		{
 			//PREDEF or PREDEFI mode - 2 parameters
@@ -126,11 +200,11 @@ public class Client
 				String ref = DEFAULT_TDRS_URL + DEFAULT_PREDEFINED_REFERENCE;
 				try
 				{
-					source = new URL(src);
-					target = new URL(tgt);
-					reference = new URL(ref);
+					task.source = new URL(src);
+					task.target = new URL(tgt);
+					task.reference = new URL(ref);
 					if(mode.equals(Mode.PREDEFI))
-						input = reference;
+						task.input = task.reference;
 				}
 				catch(MalformedURLException e)
 				{
@@ -144,8 +218,8 @@ public class Client
 				try
 				{
 					//First the source and target ontology URLs
-					source = (new URI(args[2])).toURL();
-					target = (new URI(args[3])).toURL();
+					task.source = (new URI(args[2])).toURL();
+					task.target = (new URI(args[3])).toURL();
 					//Then optional parameters
 					if(args.length > 4)
 					{
@@ -153,21 +227,34 @@ public class Client
 						int i = 4;
 						if(!args[i].startsWith("-"))
 						{
-							reference = (new URI(args[4])).toURL();
+							task.reference = (new URI(args[4])).toURL();
 							i++;
 						}
 						while(i < args.length)
 						{
 							if(args[i].equalsIgnoreCase("-i") && i < args.length-1)
 							{
-								double error = Double.parseDouble(args[++i]);
-								Oracle.startSuite(error,null);
+								errorRate = Double.parseDouble(args[++i]);
 								interactive = true;
 							}
+							else if(args[i].equalsIgnoreCase("--seed") && i < args.length-1)
+								seed = Long.parseLong(args[++i]);
+							else if(args[i].equalsIgnoreCase("--latency") && i < args.length-1)
+								latency = parseLatency(args[++i]);
+							else if(args[i].equalsIgnoreCase("--oracle-port") && i < args.length-1)
+							{
+								oraclePort = Integer.parseInt(args[++i]);
+								if(oraclePort < 0)
+									printArgError();
+							}
 							else if(args[i].equalsIgnoreCase("-f") && i < args.length-1)
 								outputFile = new File(args[++i]);
 							else if(args[i].equalsIgnoreCase("-z"))
 								automated = true;
+							else if(args[i].equalsIgnoreCase("--keep"))
+								keep = true;
+							else if(args[i].equalsIgnoreCase("--link") && i < args.length-1)
+								link = parseLink(args[++i]);
 							else
 								printArgError();
 							i++;
@@ -192,15 +279,19 @@ public class Client
 					try
 					{
 						//First the source and target ontology URLs
-						source = (new URI(args[2])).toURL();
-						target = (new URI(args[3])).toURL();
-						input = (new URI(args[4])).toURL();
+						task.source = (new URI(args[2])).toURL();
+						task.target = (new URI(args[3])).toURL();
+						task.input = (new URI(args[4])).toURL();
 						for(int i = 5; i < args.length; i++)
 						{
 							if(args[i].equalsIgnoreCase("-f") && i < args.length-1)
 								outputFile = new File(args[++i]);
 							else if(args[i].equalsIgnoreCase("-z"))
 								automated = true;
+							else if(args[i].equalsIgnoreCase("--keep"))
+								keep = true;
+							else if(args[i].equalsIgnoreCase("--link") && i < args.length-1)
+								link = parseLink(args[++i]);
 							else
 								printArgError();
 						}
@@ -222,12 +313,6 @@ public class Client
 					printArgError();
 				//The repository URI
 				tdrsLocation = args[2];
-				if(!exists(tdrsLocation + "testdata"))
-				{
-					System.err.println("Specified SEALS repository (" + tdrsLocation + ") could not be accessed, " +
-							"please make sure the identifier is correct and if so, check your internet connection!");
-					System.exit(-1);
-				}
 				//The suite ID
 				testDataCollectionName = args[3];
 				//The version ID
@@ -243,79 +328,224 @@ public class Client
 						skipTestsWithoutRefAlign = false;
 					else if(args[i].equalsIgnoreCase("-i") && ++i < args.length)
 					{
-						double error = Double.parseDouble(args[i]);
-						Oracle.startSuite(error,outRawResultFolder);
+						errorRate = Double.parseDouble(args[i]);
 						interactive = true;
 					}
+					else if(args[i].equalsIgnoreCase("--seed") && ++i < args.length)
+						seed = Long.parseLong(args[i]);
+					else if(args[i].equalsIgnoreCase("--latency") && ++i < args.length)
+						latency = parseLatency(args[i]);
+					else if(args[i].equalsIgnoreCase("--interval-log"))
+						intervalLog = true;
+					else if(args[i].equalsIgnoreCase("--keep"))
+						keep = true;
+					else if(args[i].equalsIgnoreCase("--link") && ++i < args.length)
+						link = parseLink(args[i]);
+					else if(args[i].equalsIgnoreCase("--oracle-port") && ++i < args.length)
+					{
+						oraclePort = Integer.parseInt(args[i]);
+						if(oraclePort < 0)
+							printArgError();
+					}
 					else if(args[i].equalsIgnoreCase("-s") && i+2 < args.length)
 					{
 						resultsId = args[++i];
 						toolName = args[++i];
 					}
+					else if(args[i].equalsIgnoreCase("-p") && ++i < args.length)
+					{
+						threads = Integer.parseInt(args[i]);
+						if(threads < 1)
+							printArgError();
+					}
+					else if(args[i].equalsIgnoreCase("--resume"))
+						resume = true;
+					else if(args[i].equalsIgnoreCase("--cache") && ++i < args.length)
+						cacheFolder = new File(args[i]);
+					else if(args[i].equalsIgnoreCase("--offline"))
+						offline = true;
+					else if(args[i].equalsIgnoreCase("--curves"))
+						curves = true;
+					else if(args[i].equalsIgnoreCase("--binref") && ++i < args.length)
+						binRefFolder = new File(args[i]);
+					else if(args[i].equalsIgnoreCase("--store") && ++i < args.length)
+					{
+						try
+						{
+							store = Store.valueOf(args[i].toUpperCase());
+						}
+						catch(IllegalArgumentException e)
+						{
+							printArgError();
+						}
+					}
+					else if(args[i].equalsIgnoreCase("--offheap-above") && ++i < args.length)
+					{
+						offHeapThreshold = Long.parseLong(args[i]) * 1024 * 1024;
+						if(offHeapThreshold < 1)
+							printArgError();
+					}
+					else if(args[i].equalsIgnoreCase("--prefetch") && ++i < args.length)
+					{
+						lookAhead = Integer.parseInt(args[i]);
+						if(lookAhead < 1)
+							printArgError();
+					}
+					else if(args[i].equalsIgnoreCase("--timeout") && ++i < args.length)
+					{
+						timeout = Long.parseLong(args[i]) * 1000;
+						if(timeout < 1)
+							printArgError();
+					}
+					else if(args[i].equalsIgnoreCase("-w") && ++i < args.length)
+					{
+						workers = Integer.parseInt(args[i]);
+						if(workers < 1)
+							printArgError();
+					}
 					else
 						printArgError();
 				}
+				//The worker processes query the Oracle through its server
+				if(interactive && workers > 0 && oraclePort < 0)
+					oraclePort = 0;
+				//Open the data cache: the upcoming test cases are prefetched into it, so
+				//that the tool never waits on the repository (and offline mode runs from it)
+				if(cacheFolder == null)
+					cacheFolder = new File(System.getProperty("user.home"), ".seals-omt-cache");
+				try
+				{
+					cache = new DataCache(cacheFolder, offline);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Couldn't open data cache '" + cacheFolder + "' - " + e.getMessage());
+					System.exit(-1);
+				}
+				if(!offline && !exists(tdrsLocation + "testdata"))
+				{
+					System.err.println("Specified SEALS repository (" + tdrsLocation + ") could not be accessed, " +
+							"please make sure the identifier is correct and if so, check your internet connection!");
+					System.exit(-1);
+				}
+				//Unless otherwise specified, keep all workers busy
+				if(workers > 0 && threads == 1)
+					threads = workers;
+				//Unless otherwise specified, prefetch as many test cases as can be run at a time
+				if(lookAhead == 0)
+					lookAhead = threads;
 				break;
 		}
+		//Start the Oracle, with a random seed if none was given (the seed is
+		//printed so that the run can be reproduced)
+		if(interactive)
+		{
+			if(seed == null)
+				seed = new Random().nextLong();
+			System.out.println(">>> Oracle error seed: " + seed);
+			Oracle.startSuite(errorRate, mode.equals(Mode.SUITE) ? outRawResultFolder : null, seed, intervalLog, latency);
+			//Serve the Oracle to matchers running in other processes
+			if(oraclePort > -1)
+			{
+				try
+				{
+					oracleAddress = Oracle.startServer(oraclePort);
+					System.out.println(">>> Oracle server listening on " + oracleAddress);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Cannot start Oracle server on port " + oraclePort + ": " + e.getMessage());
+					System.exit(-1);
+				}
+			}
+		}
 		
 		//Deploy the package
-		String sealsHome = Helper.deployPackage(packageLocation);
+		String sealsHome = Helper.deployPackage(packageLocation, link);
 		if(!automated)
 			Helper.stopProgram(">>> All files are copied to SEALS_HOME. Press y to start the matching process: ");
 		packagePath = new File(packageLocation);
-		try
-		{
-			bridge = loadBridge();
-		}
-		catch(PackageCreationException e)
+		//Worker mode: the tool is loaded in the worker processes rather than here
+		if(workers > 0)
 		{
-			System.err.println("Cannot create package '" + packageLocation + "': " + e.getMessage());
+			try
+			{
+				System.out.println(">>> Starting " + workers + " matcher workers...");
+				workerPool = new WorkerPool(packagePath, workers, oracleAddress);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Cannot start matcher workers for package '" + packageLocation + "': " + e.getMessage());
+				System.exit(-1);
+			}
 		}
-		catch(ToolBridgeLoadingException e)
+		else
 		{
-			System.err.println("Cannot load tool bridge from package '" + packageLocation + "': " + e.getMessage());
+			try
+			{
+				bridge = loadBridge(packagePath);
+			}
+			catch(PackageCreationException e)
+			{
+				System.err.println("Cannot create package '" + packageLocation + "': " + e.getMessage());
+			}
+			catch(ToolBridgeLoadingException e)
+			{
+				System.err.println("Cannot load tool bridge from package '" + packageLocation + "': " + e.getMessage());
+			}
 		}
 
 		//Execute the matching suite/task
 		if(mode.equals(Mode.SUITE))
+		{
 			runTestSuite();
+			if(workerPool != null)
+				workerPool.shutdown();
+		}
 		else
 		{
-			match();
-			if(outputFile != null)
+			match(task);
+			AbstractAlignment output = null;
+			if(outputFile != null && task.alignment != null)
 			{
 				try
 				{
-					saveAlignment(alignment, outputFile);
+					output = saveAlignment(task, outputFile, task.reference != null);
 				}
 				catch(IOException e)
 				{
 					System.out.println(">>> " + e.getMessage());
 					System.out.println(">>> Unable to copy alignment to the specified file: " + outputFile.getAbsolutePath());
-					System.out.println(">>> Result stored to URL: " + alignment);
+					System.out.println(">>> Result stored to URL: " + task.alignment);
 				}
 			}
 			else
-				System.out.println(">>> Result stored to URL: " + alignment);
+				System.out.println(">>> Result stored to URL: " + task.alignment);
 			Oracle.endSuite();
-	   		if(reference != null)
+	   		if(task.reference != null)
 	   		{
-	   			HashAlignment output = loadAlignment(alignment);
-	   			refAlign = loadAlignment(reference);
+	   			if(output == null)
+	   				output = loadAlignment(task.alignment, task);
+	   			AbstractAlignment refAlign = task.refAlign != null ? task.refAlign : loadAlignment(task.reference, task);
 	   			
 				int[] classif = refAlign.evaluation(output);
 				double[] evaluation = evaluationParameters(classif);
 				System.out.println(">>> Evaluation:");
 				System.out.println("Precision\tRecall\tF-measure\tRun Time");
-				System.out.println(evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2] + "\t" + runTime);
+				System.out.println(evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2] + "\t" + task.runTime);
 	   		}
 		}
 		
-		//Clean up and exit
+		//Clean up and exit (unless the deployment is kept for the next run)
+		if(keep)
+		{
+			System.out.println(">>> Keeping the deployed package in SEALS_HOME");
+			return;
+		}
 		if(!automated)
 			Helper.stopProgram(">>> Matching finished. Press y to clear SEALS_HOME: ");
 		System.out.println(">>> Cleaning up environment...");
-		Helper.deleteDirectory(new File(sealsHome), 0);
+		Helper.clearDirectory(new File(sealsHome));
 	}
 	
 	//Computes Precision, Recall and F-measure
@@ -350,14 +580,112 @@ public class Client
 		}
 	}
 
-	//Loads an Alignment using the Alignment API and returns it as a HashAlignment 
-	private static HashAlignment loadAlignment(URL alignmentUri)
+	//Loads the reference Alignment of a test case, which is only read from then on:
+	//it is memory-mapped from its binary copy if there is one, or parsed and frozen
+	//otherwise (and the binary copy is written for the following runs)
+	private static AbstractAlignment loadReference(TestCase tc)
+	{
+		File bin = null;
+		if(binRefFolder != null)
+		{
+			bin = binaryReference(binRefFolder, tc.referenceOrigin != null ? tc.referenceOrigin : tc.reference);
+			if(bin.exists())
+			{
+				try
+				{
+					return new MappedAlignment(bin);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Unable to map binary alignment " + bin + " - " + e.getMessage());
+				}
+			}
+		}
+		AbstractAlignment a = loadAlignment(tc.reference, tc);
+		if(a == null)
+			return null;
+		//Off-heap alignments are kept as they are, since a frozen copy would be in
+		//the heap, and so are compact alignments, which are already read-efficient
+		//and are evaluated against outputs that share their dictionary by id
+		if(!(a instanceof OffHeapAlignment || a instanceof CompactAlignment))
+			a = a.freeze();
+		if(bin != null)
+		{
+			try
+			{
+				binRefFolder.mkdirs();
+				MappedAlignment.write(a, bin);
+			}
+			catch(IOException e)
+			{
+				System.err.println("Unable to write binary alignment " + bin + " - " + e.getMessage());
+			}
+		}
+		return a;
+	}
+	
+	//The binary copy of a reference alignment in the given folder, named after the
+	//hash of its repository URL, which identifies the test case and suite version
+	//(test case identifiers alone repeat across suites and versions)
+	static File binaryReference(File folder, URL reference)
+	{
+		try
+		{
+			byte[] key = reference.toString().getBytes("UTF-8");
+			return new File(folder, Helper.toHex(Helper.newDigest().digest(key)) + ".bin");
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	//Loads an Alignment with the streaming reader if it is in the RDF Alignment
+	//format, or with the Alignment API otherwise, into the storage of the test case
+	static AbstractAlignment loadAlignment(URL alignmentUri, TestCase tc)
+	{
+		long length = -1;
+		try
+		{
+			URLConnection con = alignmentUri.openConnection();
+			InputStream in = con.getInputStream();
+			length = con.getContentLengthLong();
+			try
+			{
+				AbstractAlignment a = newAlignment(tc, length);
+				AlignmentReader.read(in, a);
+				return a;
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch(XMLStreamException e)
+		{
+			//Not in the RDF Alignment format
+		}
+		catch(IOException e)
+		{
+			System.err.println("IO Exception: " + e.getMessage());
+			System.err.println("Unable to open alignment " + alignmentUri);
+			return null;
+		}
+		return parseAlignment(alignmentUri, tc, length);
+	}
+	
+	//Loads an Alignment using the Alignment API into the storage of the test case
+	private static AbstractAlignment parseAlignment(URL alignmentUri, TestCase tc, long length)
 	{
 		try
 		{
 			AlignmentParser aparser = new AlignmentParser(0);
 			Alignment align = aparser.parse(alignmentUri.toURI());
-			return new HashAlignment(align);
+			AbstractAlignment a = newAlignment(tc, length);
+			if(a instanceof HashAlignment)
+				return new HashAlignment(align);
+			a.add(new HashAlignment(align));
+			return a;
 		}
 		catch(URISyntaxException e)
 		{
@@ -372,32 +700,105 @@ public class Client
 		return null;
 	}
 	
-	//Loads the tool bridge
-	private static IOntologyMatchingToolBridge loadBridge() throws PackageCreationException, ToolBridgeLoadingException
+	//Creates an empty Alignment with the storage selected for the run, or off-heap
+	//if the size of its file is above the threshold (the compact Alignments of a
+	//test case share the same URI dictionary)
+	static AbstractAlignment newAlignment(TestCase tc, long length)
 	{
-		if(bridge == null)
+		if(store.equals(Store.OFFHEAP) || (offHeapThreshold > 0 && length > offHeapThreshold))
+			return new OffHeapAlignment();
+		if(store.equals(Store.COMPACT))
 		{
-			ToolPackageFactory toolPackageFactory = new ToolPackageFactory();
-			IToolPackage toolPackage = toolPackageFactory.createPackage(packagePath);
-			ToolBridgeLoader<IOntologyMatchingToolBridge> toolBridgeLoader = new ToolBridgeLoader<IOntologyMatchingToolBridge>(
-					IOntologyMatchingToolBridge.class);
-			bridge = toolBridgeLoader.load(toolPackage).getPlugin();
+			if(tc.dictionary == null)
+				tc.dictionary = new UriDictionary();
+			return new CompactAlignment(tc.dictionary);
 		}
-		return bridge;
+		return new HashAlignment();
 	}
 	
-	//Matches two ontologies and stores the URL of the result
-	private static void match()
+	//Loads the tool bridge from the given package
+	static IOntologyMatchingToolBridge loadBridge(File packagePath) throws PackageCreationException, ToolBridgeLoadingException
 	{
-   		//Open reference alignment
-		if(reference != null)
-			refAlign = loadAlignment(reference);
+		ToolPackageFactory toolPackageFactory = new ToolPackageFactory();
+		IToolPackage toolPackage = toolPackageFactory.createPackage(packagePath);
+		ToolBridgeLoader<IOntologyMatchingToolBridge> toolBridgeLoader = new ToolBridgeLoader<IOntologyMatchingToolBridge>(
+				IOntologyMatchingToolBridge.class);
+		return toolBridgeLoader.load(toolPackage).getPlugin();
+	}
+	
+	//Runs the tool bridge on the two ontologies (and input alignment) of a test case
+	private static URL align(TestCase tc) throws ToolException, ToolBridgeException
+	{
+		//Normal match mode
+		if(tc.input == null)
+	   		return bridge.align(tc.source, tc.target);
+	   	//Extension match mode (with input alignment)
+	   	else
+	   		return bridge.align(tc.source, tc.target, tc.input);
+	}
+	
+	//Runs the tool bridge on a test case under the watchdog, interrupting
+	//the matching task if it doesn't finish within the time limit
+	//A tool that ignores the interrupt can't be stopped (only the worker
+	//processes of -w mode can be killed), so it is reported if it keeps running
+	private static URL alignWithTimeout(final TestCase tc) throws Exception
+	{
+		final CountDownLatch finished = new CountDownLatch(1);
+		Future<URL> result = watchdog.submit(new Callable<URL>()
+		{
+			public URL call() throws Exception
+			{
+				//The task runs in a pooled thread, which must be bound to its Oracle session
+				if(tc.oracle != null)
+					Oracle.bind(tc.oracle);
+				try
+				{
+					return align(tc);
+				}
+				finally
+				{
+					if(tc.oracle != null)
+						Oracle.unbind();
+					finished.countDown();
+				}
+			}
+		});
+		try
+		{
+			return result.get(timeout, TimeUnit.MILLISECONDS);
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			throw (Error)e.getCause();
+		}
+		catch(TimeoutException e)
+		{
+			result.cancel(true);
+			if(!finished.await(1, TimeUnit.SECONDS))
+				System.err.println("WARNING: The matching task of " + tc.id + " ignored the interrupt and is still running" +
+						" in the background - use -w to run the tool in worker processes that are killed on timeout");
+			throw e;
+		}
+		finally
+		{
+			result.cancel(true);
+		}
+	}
+	
+	//Matches the two ontologies of a test case and stores the URL of the result
+	private static void match(TestCase tc)
+	{
+   		//Open reference alignment (which is only read from then on, so it is frozen)
+		if(tc.reference != null)
+			tc.refAlign = loadReference(tc);
 		//Interactive mode
 	   	if(interactive)
 	   	{
 	   		//If the reference is available, start Oracle
-	   		if(refAlign != null)
-	   			Oracle.startTask(refAlign,testCaseId);
+	   		if(tc.refAlign != null)
+	   			tc.oracle = Oracle.startTask(tc.refAlign,tc.id);
 	   		else
 	   			System.err.println("No reference alignment: matching task will proceed with no user interaction");
 	   	}
@@ -406,13 +807,28 @@ public class Client
 		//Execute the matching task
 		try
    		{
-			//Normal match mode
-			if(input == null)
-		   		alignment = bridge.align(source, target);
-		   	//Extension match mode (with input alignment)
-		   	else
-		   		alignment = bridge.align(source, target, input);
+			//Worker mode: the timer is restarted once a worker is available, so that
+			//the run time doesn't include the wait for one (which depends on how
+			//busy the pool is) and is comparable with that of in-process runs
+			if(workerPool != null)
+			{
+				WorkerPool.Worker w = workerPool.take();
+				startTime = System.currentTimeMillis();
+				tc.alignment = workerPool.align(w, tc.source, tc.target, tc.input, tc.id, timeout);
+			}
+			else if(timeout > 0)
+				tc.alignment = alignWithTimeout(tc);
+			else
+				tc.alignment = align(tc);
 	   	}
+		catch(TimeoutException e)
+		{
+			System.err.println("Matching task timed out after " + timeout / 1000 + " seconds");
+			tc.note = "Timeout";
+			//The tool may still be running, so it is kept off the state of the task:
+			//its Oracle session is ended below and its URI dictionary is dropped
+			tc.dictionary = null;
+		}
 		catch(ToolException e)
 		{
 			System.err.println("Tool Exception: " + e.getMessage());
@@ -425,45 +841,36 @@ public class Client
 			System.err.println("Unable to execute matching task");
 			e.printStackTrace();
 		}
+		catch(WorkerException e)
+		{
+			System.err.println("Matcher Worker Exception: " + e.getMessage());
+			System.err.println("Unable to execute matching task");
+		}
 		catch(Exception e)
 		{
 			System.err.println("Unknown error: " + e.getMessage());
-			if(alignment == null)
+			if(tc.alignment == null)
 				System.err.println("Unable to execute matching task");
 			e.printStackTrace();
 		}
 		//Stop the timer
    		finally
    		{
-   			runTime = System.currentTimeMillis() - startTime;
-   			totalRunTime += runTime;
+   			tc.runTime = System.currentTimeMillis() - startTime;
    		}
 		//Stop the Oracle
-   		if(interactive && refAlign != null)
+   		if(tc.oracle != null)
    		{
-   			oracleAlign = Oracle.getOracleReference();
-   			Oracle.endTask();
+   			//The session is ended first, so that it gives no more answers (to a
+   			//tool still running after a timeout) while its reference is built
+   			Oracle.endTask(tc.oracle);
+   			tc.oracleAlign = tc.oracle.getOracleReference();
+   			tc.oracle = null;
    		}
 	   	//Check that the output alignment file is not null
-	   	if(alignment == null)
+	   	//(whether it can be read is checked when it is saved)
+	   	if(tc.alignment == null)
 			System.err.println("Matching task unsuccessful: null output alignment");
-	   	//And check that it can be read
-	   	else
-	   	{
-	   		try
-	   		{
-				//Check that the alignment file is really accessible
-				BufferedReader in = new BufferedReader(new InputStreamReader(alignment.openStream()));
-				in.readLine();
-				in.close();
-	   		}
-	   		catch(IOException e)
-	   		{
-				System.err.println("Matching task unsuccessful: unable to read result '" + alignment + "'");
-				e.printStackTrace();
-				return;
-			}
-   		}
 	}
 
 	//Prints the argument error message and exits
@@ -474,6 +881,37 @@ public class Client
 		System.exit(-1);
 	}
 	
+	//Parses the deployment mode of the package, exiting if it is invalid
+	private static Helper.Link parseLink(String mode)
+	{
+		if(mode.equalsIgnoreCase("hard"))
+			return Helper.Link.HARD;
+		if(mode.equalsIgnoreCase("sym"))
+			return Helper.Link.SYM;
+		if(!mode.equalsIgnoreCase("copy"))
+			printArgError();
+		return Helper.Link.COPY;
+	}
+	
+	//Parses the latency model of the simulated user, exiting if it is invalid
+	private static LatencyModel parseLatency(String model)
+	{
+		try
+		{
+			return LatencyModel.parse(model);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Cannot read latency trace: " + e.getMessage());
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+		}
+		printArgError();
+		return null;
+	}
+	
 	//Prints the help message and exits
 	private static void printHelpMessage()
 	{
@@ -483,17 +921,61 @@ public class Client
 		System.out.println("> Predefined test: \"<-t>\"");
 		System.out.println("> Predefined test with input alignment: \"<-ti>\"");
 		System.out.println("> Parametrized test: \"<-o> <ontologyURL1> <ontologyURL2> [<referenceAlignURL>] " +
-							"[<-f> <ouputFile>] [<-i> <errorRate>] [<-z>]\"");
+							"[<-f> <ouputFile>] [<-i> <errorRate>] [<--seed> <seed>] [<--latency> <model>] [<--oracle-port> <port>] [<--keep>] [<--link> <hard|sym>] [<-z>]\"");
 		System.out.println("> Parametrized test with input alignment: \"<-o> <ontologyURL1> <ontologyURL2> <inputAlignURL> " +
-							"[<-f> <ouputFile>] [<-z>]\"");
+							"[<-f> <ouputFile>] [<--keep>] [<--link> <hard|sym>] [<-z>]\"");
 		System.out.println("> Run suite: \"<-x> <repUri> <suiteId> <versionId> <outputFolder> " +
-							"[<-a>] [<-z>] [<-i> <errorRate>] [<-s> <resultsId> <toolName>]\"");
+							"[<-a>] [<-z>] [<-i> <errorRate>] [<--seed> <seed>] [<--latency> <model>] [<--oracle-port> <port>] [<--interval-log>] [<--keep>] [<--link> <hard|sym>] [<-s> <resultsId> <toolName>] [<-p> <threads>] [<-w> <workers>] [<--timeout> <seconds>] [<--resume>] [<--cache> <folder>] [<--offline>] [<--prefetch> <testCases>] [<--store> <hash|compact|offheap>] [<--offheap-above> <MB>] [<--binref> <folder>] [<--curves>]\"");
 		System.out.println("\nParameters:");
 		System.out.println("> -a (-x mode only): all tests in the suite will be run, including those with no reference alignment");
+		System.out.println("> --binref (-x mode only): keeps binary copies of the reference alignments in the given folder" +
+							" (named after the hash of their repository URL), which are memory-mapped instead of parsed in later" +
+							" runs; the folder can be prebuilt with the AlignmentConverter's -x mode");
+		System.out.println("> --cache (-x mode only): keeps the suite's data items in the given folder (default:" +
+							" ~/.seals-omt-cache), and passes the cached copies to the tool; they are downloaded again only if" +
+							" they change in the repository");
+		System.out.println("> --curves (-x mode only): evaluates each output alignment at every confidence threshold," +
+							" writing its precision/recall curve to <testCaseId>_pr.txt and its best threshold to results.txt");
 		System.out.println("> -f (-o or -oi mode): saves the output alignment to the specified file");
 		System.out.println("> -i (-o or -x mode): activates interactive matching with the given error rate;" +
 							" requires a <referenceAlignURL> in -o mode");
+		System.out.println("> --oracle-port (-o or -x mode): in interactive mode, serves the Oracle on the given local port" +
+							" (0 for any free port) to matchers running in other processes, which query it through an OracleClient" +
+							" or with -Dseals.oracle=<host:port> (and -Dseals.oracle.task=<testCaseId> if several tasks run at once)");
+		System.out.println("> --interval-log (-x mode only): in interactive mode, logs the time between every two Oracle requests" +
+							" to interactive_request_intervals.txt (their percentiles are always in interactive_results.txt)");
+		System.out.println("> --keep (-o, -oi or -x mode): keeps the package deployed in SEALS_HOME at the end, so that the" +
+							" next run only copies the files that changed (by size and time, or else by SHA-256)");
+		System.out.println("> --link (-o, -oi or -x mode): deploys the lib folder of the package into SEALS_HOME as hard links" +
+							" or symbolic links to its files instead of copies (\"hard\" falls back to copying across file systems);" +
+							" the conf folder is still copied, but anything the tool writes to its lib files changes the package itself");
+		System.out.println("> --latency (-o or -x mode): in interactive mode, the time the simulated user takes to answer" +
+							" each question: \"fixed:<ms>\", \"lognormal:<median ms>:<sigma>\" or \"trace:<file>\" (one time in ms" +
+							" per line); Oracle.check waits for the answer, Oracle.checkAsync doesn't, and interactive_results.txt" +
+							" reports how much of the user's time the matcher spent idle or overlapped with other work");
+		System.out.println("> --offheap-above (-x mode only): stores the alignments whose files are larger than the given" +
+							" number of megabytes off-heap, regardless of --store");
+		System.out.println("> --offline (-x mode only): runs the suite entirely from the data cache, without accessing" +
+							" the repository (default cache folder: ~/.seals-omt-cache)");
+		System.out.println("> --prefetch (-x mode only): number of upcoming test cases whose data items are downloaded" +
+							" into the data cache in the background while the current ones are matched (default: as many as" +
+							" run concurrently)");
+		System.out.println("> -p (-x mode only): runs up to the given number of test cases concurrently;" +
+							" the tool must be thread-safe");
+		System.out.println("> --resume (-x mode only): skips the test cases completed in a previous run to the same" +
+							" output folder, according to its journal.txt");
 		System.out.println("> -s (-x mode only): activates store mode");
+		System.out.println("> --seed (-o or -x mode): seed of the Oracle's simulated errors in interactive mode;" +
+							" the same seed gives the same errors for the same queries (default: random, printed at startup)");
+		System.out.println("> --timeout (-x mode only): interrupts each matching task that runs for longer than the given" +
+							" number of seconds (or kills its worker process in -w mode); a tool that ignores the interrupt" +
+							" keeps running in the background, with its Oracle session ended, so use -w to really stop it");
+		System.out.println("> --store (-x mode only): storage of the reference and output alignments: \"hash\" (default)" +
+							" \"compact\" (dictionary-encoded, for very large alignments) or \"offheap\" (outside of the Java heap," +
+							" for multi-million-mapping alignments, in memory mapped from temporary files in the folder given by" +
+							" -Dseals.offheap.dir=<folder>, or the temporary folder)");
+		System.out.println("> -w (-x mode only): runs the tool in the given number of separate worker processes," +
+							" which are restarted if they crash (in interactive mode, they query the Oracle through its server)");
 		System.out.println("> -z (-o, -oi or -x mode): activates batch mode - no command line input will be required to continue");
 		System.exit(0);
 	}
@@ -534,7 +1016,9 @@ public class Client
 			resultString = "Test Case ID\tRun Time\tPrecision\tRecall\tF-measure\t";
 			if(interactive)
 				resultString += "Precision Oracle\tRecall Oracle\tF-measure Oracle\t";
-			resultString += "Notes\n";
+			if(curves)
+				resultString += "Best Threshold\tBest F-measure\t";
+			resultString += "Prefetch Time\tNotes\n";
 			writer.append(resultString);
 			System.out.println(resultString);
 		}
@@ -545,141 +1029,205 @@ public class Client
 			e.printStackTrace();
 			System.exit(-1);
 		}
-		classification = new int[3];
-		String emptyResult;
-		if(interactive)
+		//Open the journal of completed test cases
+		File journalFile = new File(outRawResultFolder, "journal.txt");
+		Journal journal = null;
+		try
 		{
-			oracleClassification = new int[3];
-			emptyResult = "\t-\t-\t-\t-\t-\t-";
+			journal = new Journal(journalFile, resume);
+			if(resume)
+				System.out.println(">>> Resuming suite run: " + journal.size() + " test cases already completed");
+		}
+		catch(IOException e)
+		{
+			System.err.println("Couldn't open journal file '" + journalFile + "' - " + e.getMessage());
+			e.printStackTrace();
+			System.exit(-1);
 		}
-		else
-			emptyResult = "\t-\t-\t-";
 		
-		//Run each test case in the suite
-		TestDataSuite tds = new TestDataSuite(tdrsLocation, testDataCollectionName, testDataVersionNumber);
-		TestCaseIterator it = tds.getTestCases();
-		while(it.hasNext())
-		{
-			testCaseId = it.next();
-			//Reset the test case variables
-			reference = null;
-			refAlign = null;
-			oracleAlign = null;
-			//Check if the source and target are accessible
-			if(!exists(String.valueOf(tds.getDataItem(testCaseId, "source"))))
-				resultString = testCaseId + "\t-" + emptyResult + "\tSource ontology not defined";
-			else if(!exists(String.valueOf(tds.getDataItem(testCaseId, "target"))))
-				resultString = testCaseId + "\t-" + emptyResult + "\tTarget ontology not defined";
-			else
+		//Prefetch the data items of the upcoming test cases in the background
+		final TestDataSuite tds = new TestDataSuite(tdrsLocation, testDataCollectionName, testDataVersionNumber);
+		final List<String> testCases = getTestCases(tds);
+		final Journal completed = journal;
+		final BlockingQueue<TestCase> prefetched = new ArrayBlockingQueue<TestCase>(lookAhead);
+		final TestCase end = new TestCase(null);
+		Thread prefetcher = new Thread(new Runnable()
+		{
+			public void run()
 			{
-				//Get the source, target, and reference (if available)
-				source = tds.getDataItem(testCaseId, "source");
-				target = tds.getDataItem(testCaseId, "target");
-				if(exists(String.valueOf(tds.getDataItem(testCaseId, "reference"))))
-					reference = tds.getDataItem(testCaseId, "reference");
-				//If reference is unavailable and we're skipping tests without reference, skip this
-				else if(skipTestsWithoutRefAlign)
-					continue;
-				//Reset the output alignment URI
-				alignment = null;
-				//Match the test case
 				try
 				{
-					match();
-				}
-				//Process the results (even in the event of an exception
-				//if it didn't fully impede the matching task)
-				finally
-				{
-					//If there is no output alignment, then there is nothing to process
-					if(alignment == null)
+					for(String testCaseId : testCases)
 					{
-						resultString = testCaseId + "\t" + runTime + emptyResult + "\tNo output alignment found";
-						//Store mode: store error message and null results
-						if(resultsId != null)
-						{
-							                                //testId, problemTool, problemPlatform
-							genMetadata.addRRDataItemMetadata(testCaseId, "true", "false");
-							genMetadata.addIRDataItemMetadata(testCaseId, 0, 0, 0, 0);
-						}
+						//Test cases completed in a previous run are taken from the journal
+						TestCase tc = completed.get(testCaseId);
+						if(tc == null)
+							tc = prepareTestCase(tds, testCaseId);
+						if(tc != null)
+							prefetched.put(tc);
 					}
+					prefetched.put(end);
+				}
+				catch(InterruptedException e)
+				{
+					//The suite was aborted
+				}
+			}
+		}, "prefetcher");
+		prefetcher.setDaemon(true);
+		prefetcher.start();
+		
+		//Run the test cases in the suite and write their results
+		runTestCases(prefetched, end, new TestCaseRunner()
+		{
+			public TestCase run(TestCase tc)
+			{
+				return runTestCase(tc);
+			}
+		}, threads, writer, journal, genMetadata);
+		prefetcher.interrupt();
+		journal.close();
+
+		//Store mode: write raw results suite metadata and interpretation suite metadata
+		if(resultsId != null)
+		{
+			saveStore(outRawResultFolder + File.separatorChar + "metadata.rdf", genMetadata.getRRSuiteMetadata());
+			String pathInter = outRawResultFolder + File.separatorChar + "interpretations";
+			File interpretation = new File(pathInter);
+			if(interpretation.mkdir())
+				saveStore(pathInter + File.separatorChar + "metadata.rdf", genMetadata.getIRSuiteMetadata());
+
+			//Zip the folder containing the .rdf in order to upload to the rrs repository
+			ZipUpload obj = new ZipUpload();
+			//Raw results
+			String zip = outRawResultFolder + File.separatorChar + rawResultsId + ".zip";
+			System.out.println(outRawResultFolder);
+			if(obj.zip(outRawResultFolder, zip))
+				if(obj.upload("rr", zip, repRawResultsMetadata))
+					System.out.println(">>> Results store at SEALS repository (rr):	 " + rawResultsId);
+			//Interpretations
+			zip = pathInter + File.separatorChar + interpretationsId + ".zip";
+			if(obj.zip(pathInter, zip))
+				if(obj.upload("ir", zip, repInterpretationMetadata))
+					System.out.println(">>> results store at SEALS repository (ir):	 " + interpretationsId);
+		}
+	}
+
+	//Runs the prefetched test cases of a suite (until the end marker), up to 'threads'
+	//at a time, and writes their results (and journals them) in the order in which
+	//they were prefetched, so that they don't depend on which test cases finish
+	//first; the global results are written last, and the writer is closed
+	static void runTestCases(BlockingQueue<TestCase> prefetched, TestCase end, final TestCaseRunner runner, int threads,
+			BufferedWriter writer, Journal journal, Content genMetadata)
+	{
+		totalRunTime = 0;
+		totalPrefetchTime = 0;
+		classification = new int[3];
+		if(interactive)
+			oracleClassification = new int[3];
+		String resultString;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		Deque<Future<TestCase>> tasks = new ArrayDeque<Future<TestCase>>();
+		//The test cases of the tasks, so that those that fail can still be reported
+		Deque<TestCase> running = new ArrayDeque<TestCase>();
+		boolean more = true;
+		while(more || !tasks.isEmpty())
+		{
+			TestCase tc;
+			try
+			{
+				//Start the next test case if there is a free thread
+				if(more && tasks.size() < threads)
+				{
+					final TestCase next = prefetched.take();
+					if(next == end)
+						more = false;
 					else
 					{
-						try
-						{
-							//Store the output alignment
-							File file = new File(outRawResultFolder, testCaseId + ".rdf");														
-							saveAlignment(alignment, file);
-						}
-						catch(IOException e)
+						Callable<TestCase> task = new Callable<TestCase>()
 						{
-							System.err.println("Could not save output alignment: " + e.getMessage());
-							e.printStackTrace();
-						}
-						//Store mode: store item raw results
-						if(resultsId != null)
-							genMetadata.addRRDataItemMetadata(testCaseId, "false", "false");
-						//If there is a reference alignment, evaluate the output alignment
-						if(refAlign != null)
-						{
-							HashAlignment output = loadAlignment(alignment);
-							if(output == null)
+							public TestCase call()
 							{
-								resultString = testCaseId + "\t" + runTime + emptyResult + "\tUnable to open output alignment";
-								//Store mode: add empty interpretation
-								if(resultsId != null)
-									genMetadata.addIRDataItemMetadata(testCaseId, 0, 0, 0, runTime);
+								return runner.run(next);
 							}
-							else
-							{
-								int[] classif = refAlign.evaluation(output);
-								for(int i = 0; i < 3; i++)
-									classification[i] += classif[i];
-								double[] evaluation = evaluationParameters(classif);
-								resultString = testCaseId + "\t" + runTime + "\t" + evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2];
-								//Store mode: add interpretation
-								if(resultsId != null)
-									genMetadata.addIRDataItemMetadata(testCaseId, evaluation[0], evaluation[1], evaluation[2], runTime);
-								if(interactive)
-								{
-									if(oracleAlign != null)
-									{
-										classif = oracleAlign.evaluation(output);
-										for(int i = 0; i < 3; i++)
-											oracleClassification[i] += classif[i];
-										evaluation = evaluationParameters(classif);
-										resultString += "\t" + evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2] + "\t-";
-									}
-									else
-										resultString += "\t-\t-\t-\tNot interactive";
-								}
-								else
-									resultString += "\t-";
-							}
-						}
-						else
+						};
+						//Test cases from the journal or with missing ontologies have nothing to run
+						if(next.runTime > -1 || next.note != null)
 						{
-							resultString = testCaseId + "\t" + runTime + emptyResult + "\tNo reference alignment available";
-							//Store mode: add empty interpretation
-							if(resultsId != null)
-								genMetadata.addIRDataItemMetadata(testCaseId, 0, 0, 0, runTime);
+							FutureTask<TestCase> done = new FutureTask<TestCase>(task);
+							done.run();
+							tasks.add(done);
 						}
+						else
+							tasks.add(pool.submit(task));
+						running.add(next);
 					}
+					continue;
 				}
+				tasks.poll().get();
+				tc = running.poll();
 			}
+			catch(InterruptedException e)
+			{
+				System.err.println("Interrupted while running test suite: " + e.getMessage());
+				break;
+			}
+			catch(ExecutionException e)
+			{
+				tc = running.poll();
+				//The test case is reported (and journaled) as failed, like those that time out
+				System.err.println("Unable to execute test case: " + e.getCause());
+				e.getCause().printStackTrace();
+				tc.note = "Error: " + e.getCause().getClass().getSimpleName();
+			}
+			if(tc.runTime > -1)
+				totalRunTime += tc.runTime;
+			if(tc.prefetchTime > -1)
+				totalPrefetchTime += tc.prefetchTime;
+			if(tc.classification != null)
+				for(int i = 0; i < 3; i++)
+					classification[i] += tc.classification[i];
+			if(tc.oracleClassification != null)
+				for(int i = 0; i < 3; i++)
+					oracleClassification[i] += tc.oracleClassification[i];
+			//Store mode: store the raw results and the interpretation
+			if(genMetadata != null && tc.runTime > -1)
+			{
+				if(tc.alignment == null)
+				{
+					                                //testId, problemTool, problemPlatform
+					genMetadata.addRRDataItemMetadata(tc.id, "true", "false");
+					genMetadata.addIRDataItemMetadata(tc.id, 0, 0, 0, 0);
+				}
+				else
+				{
+					genMetadata.addRRDataItemMetadata(tc.id, "false", "false");
+					if(tc.classification == null)
+						genMetadata.addIRDataItemMetadata(tc.id, 0, 0, 0, tc.runTime);
+					else
+					{
+						double[] evaluation = evaluationParameters(tc.classification);
+						genMetadata.addIRDataItemMetadata(tc.id, evaluation[0], evaluation[1], evaluation[2], tc.runTime);
+					}
+				}
+			}
+			resultString = resultString(tc);
 			System.out.println(resultString);
 			try
 			{
 				writer.append(resultString + "\n");
 				writer.flush();
+				if(journal.get(tc.id) != tc)
+					journal.append(tc);
 			}
 			catch(IOException e)
 			{
-				System.err.println("Couldn't write results to '" + f + "' - " + e.getMessage());
+				System.err.println("Couldn't write results - " + e.getMessage());
 				e.printStackTrace();
 				System.exit(-1);
 			}
 		}
+		pool.shutdown();
 		//Global evaluation
 		double[] evaluation = evaluationParameters(classification);
 		resultString = "Global\t" + totalRunTime + "\t" + evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2];
@@ -689,7 +1237,9 @@ public class Client
 			resultString += "\t" + evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2];
 			Oracle.endSuite();
 		}
-		resultString += "\t-";
+		if(curves)
+			resultString += "\t-\t-";
+		resultString += "\t" + totalPrefetchTime + "\t-";
 		System.out.println(resultString);
 		try
 		{
@@ -700,42 +1250,255 @@ public class Client
 		{
 			e.printStackTrace();
 		}
+	}
 
-		//Store mode: write raw results suite metadata and interpretation suite metadata
-		if(resultsId != null)
+	//Lists the test cases of the suite, from the data cache in offline mode
+	private static List<String> getTestCases(TestDataSuite tds)
+	{
+		String suite = tdrsLocation + "\t" + testDataCollectionName + "\t" + testDataVersionNumber;
+		List<String> testCases = null;
+		try
 		{
-			saveStore(outRawResultFolder + File.separatorChar + "metadata.rdf", genMetadata.getRRSuiteMetadata());
-			String pathInter = outRawResultFolder + File.separatorChar + "interpretations";
-			File interpretation = new File(pathInter);
-			if(interpretation.mkdir())
-				saveStore(pathInter + File.separatorChar + "metadata.rdf", genMetadata.getIRSuiteMetadata());
+			if(cache != null && cache.isOffline())
+			{
+				testCases = cache.getTestCases(suite);
+				if(testCases == null)
+				{
+					System.err.println("Test suite " + testDataCollectionName + " (" + testDataVersionNumber + ") is not in the data cache");
+					System.exit(-1);
+				}
+				return testCases;
+			}
+			testCases = new ArrayList<String>();
+			TestCaseIterator it = tds.getTestCases();
+			while(it.hasNext())
+				testCases.add(it.next());
+			if(cache != null)
+				cache.putTestCases(suite, testCases);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Data cache error: " + e.getMessage());
+			e.printStackTrace();
+		}
+		if(testCases == null)
+			return new ArrayList<String>();
+		return testCases;
+	}
+	
+	//Gets the URL of the cached copy of a data item of a test case (downloading
+	//it if necessary), or null if it is not available
+	private static URL getDataItem(TestDataSuite tds, String testCaseId, String item)
+	{
+		URL url = tds.getDataItem(testCaseId, item);
+		try
+		{
+			return cache.resolve(url);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to retrieve " + item + " of test case " + testCaseId + ": " + e.getMessage());
+			return null;
+		}
+	}
+	
+	//Retrieves the data items of a test case from the test suite
+	//Returns null if the test case is skipped for lack of a reference alignment
+	private static TestCase prepareTestCase(TestDataSuite tds, String testCaseId)
+	{
+		TestCase tc = new TestCase(testCaseId);
+		long startTime = System.currentTimeMillis();
+		try
+		{
+			//Get the source and target, and check if they are accessible
+			tc.source = getDataItem(tds, testCaseId, "source");
+			if(tc.source == null)
+			{
+				tc.note = "Source ontology not defined";
+				return tc;
+			}
+			tc.target = getDataItem(tds, testCaseId, "target");
+			if(tc.target == null)
+			{
+				tc.note = "Target ontology not defined";
+				return tc;
+			}
+			//Get the reference (if available)
+			tc.reference = getDataItem(tds, testCaseId, "reference");
+			if(tc.reference != null)
+				tc.referenceOrigin = tds.getDataItem(testCaseId, "reference");
+			//If reference is unavailable and we're skipping tests without reference, skip this
+			if(tc.reference == null && skipTestsWithoutRefAlign)
+				return null;
+			return tc;
+		}
+		catch(RuntimeException e)
+		{
+			System.err.println("Unable to retrieve test case " + testCaseId + ": " + e.getMessage());
+			tc.note = "Unable to retrieve test case";
+			return tc;
+		}
+		finally
+		{
+			tc.prefetchTime = System.currentTimeMillis() - startTime;
+		}
+	}
+	
+	//Runs a single (prefetched) test case from a test suite and evaluates its output alignment
+	private static TestCase runTestCase(TestCase tc)
+	{
+		//Test cases from the journal or with missing ontologies have nothing to run
+		if(tc.runTime > -1 || tc.note != null)
+			return tc;
+		//Match the test case
+		try
+		{
+			match(tc);
+		}
+		//Process the results (even in the event of an exception
+		//if it didn't fully impede the matching task)
+		finally
+		{
+			//If there is no output alignment, then there is nothing to process
+			if(tc.alignment == null)
+			{
+				if(tc.note == null)
+					tc.note = "No output alignment found";
+			}
+			else
+			{
+				//Store the output alignment, reading it for evaluation in the same
+				//pass if there is a reference alignment
+				AbstractAlignment output = null;
+				try
+				{
+					File file = new File(outRawResultFolder, tc.id + ".rdf");
+					output = saveAlignment(tc, file, tc.refAlign != null);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Could not save output alignment: " + e.getMessage());
+					e.printStackTrace();
+					if(tc.refAlign != null)
+						output = loadAlignment(tc.alignment, tc);
+				}
+				//If there is a reference alignment, evaluate the output alignment
+				if(tc.refAlign != null)
+				{
+					if(output == null)
+						tc.note = "Unable to open output alignment";
+					else
+					{
+						tc.classification = tc.refAlign.evaluation(output);
+						if(curves)
+							evaluateCurve(tc, output);
+						if(interactive)
+						{
+							if(tc.oracleAlign != null)
+								tc.oracleClassification = tc.oracleAlign.evaluation(output);
+							else
+								tc.note = "Not interactive";
+						}
+					}
+				}
+				else
+					tc.note = "No reference alignment available";
+			}
+		}
+		return tc;
+	}
 
-			//Zip the folder containing the .rdf in order to upload to the rrs repository
-			ZipUpload obj = new ZipUpload();
-			//Raw results
-			String zip = outRawResultFolder + File.separatorChar + rawResultsId + ".zip";
-			System.out.println(outRawResultFolder);
-			if(obj.zip(outRawResultFolder, zip))
-				if(obj.upload("rr", zip, repRawResultsMetadata))
-					System.out.println(">>> Results store at SEALS repository (rr):	 " + rawResultsId);
-			//Interpretations
-			zip = pathInter + File.separatorChar + interpretationsId + ".zip";
-			if(obj.zip(pathInter, zip))
-				if(obj.upload("ir", zip, repInterpretationMetadata))
-					System.out.println(">>> results store at SEALS repository (ir):	 " + interpretationsId);
+	//Builds the line of the results file for a test case
+	private static String resultString(TestCase tc)
+	{
+		String result = tc.id + "\t" + (tc.runTime > -1 ? String.valueOf(tc.runTime) : "-");
+		if(tc.classification == null)
+			result += "\t-\t-\t-";
+		else
+		{
+			double[] evaluation = evaluationParameters(tc.classification);
+			result += "\t" + evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2];
+		}
+		if(interactive)
+		{
+			if(tc.oracleClassification == null)
+				result += "\t-\t-\t-";
+			else
+			{
+				double[] evaluation = evaluationParameters(tc.oracleClassification);
+				result += "\t" + evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2];
+			}
+		}
+		if(curves)
+		{
+			if(tc.bestThreshold < 0)
+				result += "\t-\t-";
+			else
+				result += "\t" + tc.bestThreshold + "\t" + tc.bestF;
+		}
+		result += "\t" + (tc.prefetchTime > -1 ? String.valueOf(tc.prefetchTime) : "-");
+		result += "\t" + (tc.note == null ? "-" : tc.note);
+		return result;
+	}
+	
+	//Evaluates the output alignment of a test case at each confidence threshold,
+	//saving its precision/recall curve and recording its best threshold
+	private static void evaluateCurve(TestCase tc, AbstractAlignment output)
+	{
+		ThresholdCurve curve = tc.refAlign.thresholdEvaluation(output);
+		int best = curve.best();
+		if(best > -1)
+		{
+			tc.bestThreshold = curve.getThreshold(best);
+			tc.bestF = evaluationParameters(curve.getClassification(best))[2];
+		}
+		File f = new File(outRawResultFolder, tc.id + "_pr.txt");
+		try
+		{
+			curve.write(f);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Couldn't write precision/recall curve '" + f + "' - " + e.getMessage());
 		}
 	}
 
-	//Saves the alignment specified by the given URL to the given file
-	private static void saveAlignment(URL url, File file) throws IOException
+	//Saves the output alignment of a test case to the given file, hashing it and
+	//(if requested) reading it in the same pass; returns the alignment read, or
+	//null if it wasn't requested or couldn't be read
+	private static AbstractAlignment saveAlignment(TestCase tc, File file, boolean read) throws IOException
 	{
-		InputStream is = url.openStream();
-		FileOutputStream fos = new FileOutputStream(file);
-		int oneChar;
-		while((oneChar = is.read()) != -1)
-			fos.write(oneChar);
-		is.close();
-		fos.close();
+		MessageDigest digest = Helper.newDigest();
+		URLConnection con = tc.alignment.openConnection();
+		TeeInputStream is = new TeeInputStream(con.getInputStream(),
+				new DigestOutputStream(new FileOutputStream(file), digest));
+		long length = con.getContentLengthLong();
+		AbstractAlignment a = null;
+		try
+		{
+			if(read)
+			{
+				try
+				{
+					a = newAlignment(tc, length);
+					AlignmentReader.read(is, a);
+				}
+				catch(XMLStreamException e)
+				{
+					a = null;
+				}
+			}
+			is.drain();
+		}
+		finally
+		{
+			is.close();
+		}
+		tc.hash = Helper.toHex(digest.digest());
+		//Alignments in other formats are parsed from the saved copy by the Alignment API
+		if(read && a == null)
+			a = parseAlignment(file.toURI().toURL(), tc, file.length());
+		return a;
 	}
 
 	//Saves suite metadata content to file
@@ -0,0 +1,348 @@
+package eu.sealsproject.omt.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * A memory-efficient Alignment representation for very large Alignments.
+ * Entity URIs are encoded as ints by a UriDictionary (which can be shared by
+ * several Alignments) and each pair of mapped entities is stored as a single
+ * long in an open-addressing hash set, together with the bits of its relations:
+ * [source id: 30 bits][target id: 30 bits][relations: 4 bits]
+ *
+ * @author Daniel Faria
+ */
+
+public class CompactAlignment extends AbstractAlignment
+{
+	private static final int MAX_ID = (1 << 30) - 1;
+	private static final long MASK = 0xFL;
+	private static final Relation[] RELATIONS = Relation.values();
+	private UriDictionary dictionary;
+	//Open-addressing (linear probing) hash set of mapped pairs (0 for empty slots)
+	private long[] table;
+	//Confidences of the pairs (in the same slots as the pairs)
+	private float[] confidences;
+	private int pairs;
+	private int size;
+	//Source to targets index, built only if getSources or getTargets are called
+	private HashMap<String,Set<String>> index;
+
+	/**
+	 * Constructs a new empty CompactAlignment with its own UriDictionary
+	 */
+	public CompactAlignment()
+	{
+		this(new UriDictionary());
+	}
+
+	/**
+	 * Constructs a new empty CompactAlignment
+	 * @param dictionary: the UriDictionary with which to encode the entity URIs
+	 */
+	public CompactAlignment(UriDictionary dictionary)
+	{
+		this.dictionary = dictionary;
+		table = new long[64];
+		confidences = new float[64];
+		pairs = 0;
+		size = 0;
+	}
+
+	@Override
+	public void add(String uri1, String uri2, Relation r)
+	{
+		add(uri1, uri2, r, 1.0);
+	}
+
+	/**
+	 * Adds a mapping with the given confidence to the Alignment if it is new;
+	 * the confidence of a pair of entities with more than one relation is the
+	 * highest confidence of its mappings
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param r: the mapping relation between the entities
+	 * @param confidence: the confidence of the mapping
+	 */
+	@Override
+	public void add(String uri1, String uri2, Relation r, double confidence)
+	{
+		//If the mapping already exists in the Alignment, return
+		if(this.contains(uri1, uri2, r))
+			return;
+		size++;
+		index = null;
+		int id1 = dictionary.intern(uri1);
+		int id2 = dictionary.intern(uri2);
+		if(id1 > MAX_ID || id2 > MAX_ID)
+			throw new IllegalStateException("Too many entities for a CompactAlignment");
+		//If the entities are already mapped, add the new relation
+		int slot = find(id1, id2);
+		if(slot > -1)
+			table[slot] |= r.mask();
+		else if((slot = find(id2, id1)) > -1)
+			table[slot] |= r.reverse().mask();
+		//Otherwise add a new pair
+		else
+		{
+			insert(((long)id1 << 34) | ((long)id2 << 4) | r.mask(), (float)confidence);
+			return;
+		}
+		confidences[slot] = Math.max(confidences[slot], (float)confidence);
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		return id1 > -1 && id2 > -1 && find(id1, id2) > -1;
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2, Relation r)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		return id1 > -1 && id2 > -1 && contains(id1, id2, r);
+	}
+
+	@Override
+	public int[] evaluation(AbstractAlignment other)
+	{
+		//Alignments that share the dictionary can be compared by identifier
+		CompactAlignment compact = null;
+		if(other instanceof CompactAlignment && ((CompactAlignment)other).dictionary == dictionary)
+			compact = (CompactAlignment)other;
+		//Evaluation matrix
+		int[] eval = new int[3];
+		//False Positives
+		eval[1] = other.size();
+		for(long e : table)
+		{
+			if(e == 0)
+				continue;
+			int id1 = (int)(e >>> 34);
+			int id2 = (int)(e >>> 4) & MAX_ID;
+			String source = dictionary.get(id1);
+			String target = dictionary.get(id2);
+			//If there is an unknown relation between the entities, we ignore the mapping
+			if((e & Relation.UNKNOWN.mask()) != 0)
+			{
+				//And if it is in the other Alignment we discount
+				//it, so it doesn't count as a False Positive
+				if(compact != null ? compact.find(id1, id2) > -1 : other.contains(source, target))
+					eval[1]--;
+				continue;
+			}
+			//Otherwise, we check if the mapping with each relation is in the other Alignment
+			for(Relation r : Relation.values((byte)(e & MASK)))
+			{
+				//If so, it is a True Positive, otherwise a False Negative
+				if(compact != null ? compact.contains(id1, id2, r) : other.contains(source, target, r))
+					eval[0]++;
+				else
+					eval[2]++;
+			}
+		}
+		eval[1] -= eval[0];
+		return eval;
+	}
+
+	@Override
+	public void forEachMapping(MappingVisitor v)
+	{
+		for(long e : table)
+		{
+			if(e == 0)
+				continue;
+			String source = dictionary.get((int)(e >>> 34));
+			String target = dictionary.get((int)(e >>> 4) & MAX_ID);
+			for(Relation r : RELATIONS)
+				if((e & r.mask()) != 0)
+					v.visit(source, target, r);
+		}
+	}
+
+	@Override
+	public double getConfidence(String uri1, String uri2)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		if(id1 < 0 || id2 < 0)
+			return -1;
+		int slot = find(id1, id2);
+		if(slot < 0 && (slot = find(id2, id1)) < 0)
+			return -1;
+		return confidences[slot];
+	}
+
+	/**
+	 * @return the UriDictionary of this Alignment
+	 */
+	public UriDictionary getDictionary()
+	{
+		return dictionary;
+	}
+
+	@Override
+	public Set<String> getSources()
+	{
+		return index().keySet();
+	}
+
+	@Override
+	public Set<String> getTargets(String source)
+	{
+		return index().get(source);
+	}
+
+	@Override
+	public Vector<Relation> getRelations(String source, String target)
+	{
+		int id1 = dictionary.lookup(source);
+		int id2 = dictionary.lookup(target);
+		int slot = id1 > -1 && id2 > -1 ? find(id1, id2) : -1;
+		if(slot < 0)
+			return null;
+		Vector<Relation> rels = new Vector<Relation>();
+		for(Relation r : Relation.values((byte)(table[slot] & MASK)))
+			rels.add(r);
+		return rels;
+	}
+
+	@Override
+	public void remove(String uri1, String uri2, Relation r)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		if(id1 < 0 || id2 < 0)
+			return;
+		int slot = find(id1, id2);
+		long b = r.mask();
+		if(slot < 0 || (table[slot] & b) == 0)
+		{
+			slot = find(id2, id1);
+			b = r.reverse().mask();
+			if(slot < 0 || (table[slot] & b) == 0)
+				return;
+		}
+		size--;
+		index = null;
+		table[slot] &= ~b;
+		if((table[slot] & MASK) == 0)
+			delete(slot);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	//Checks if the mapping between two entity identifiers (or its reverse) is in the Alignment
+	private boolean contains(int id1, int id2, Relation r)
+	{
+		int slot = find(id1, id2);
+		if(slot > -1 && (table[slot] & r.mask()) != 0)
+			return true;
+		slot = find(id2, id1);
+		return slot > -1 && (Relation.reverse((byte)(table[slot] & MASK)) & r.mask()) != 0;
+	}
+
+	//Finds the slot of the pair of entity identifiers, or returns -1 if it isn't in the Alignment
+	private int find(int id1, int id2)
+	{
+		long pair = ((long)id1 << 30) | id2;
+		int mask = table.length - 1;
+		int i = hash(pair) & mask;
+		while(table[i] != 0)
+		{
+			if(table[i] >>> 4 == pair)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	//Inserts a new pair into the hash set
+	private void insert(long e, float confidence)
+	{
+		//Keep the load factor at most 0.5
+		if(++pairs * 2 > table.length)
+		{
+			long[] old = table;
+			float[] oldConfidences = confidences;
+			table = new long[old.length * 2];
+			confidences = new float[old.length * 2];
+			for(int i = 0; i < old.length; i++)
+				if(old[i] != 0)
+					put(old[i], oldConfidences[i]);
+		}
+		put(e, confidence);
+	}
+
+	private void put(long e, float confidence)
+	{
+		int mask = table.length - 1;
+		int i = hash(e >>> 4) & mask;
+		while(table[i] != 0)
+			i = (i + 1) & mask;
+		table[i] = e;
+		confidences[i] = confidence;
+	}
+
+	//Deletes the pair in the given slot, shifting back the pairs that
+	//follow it so that no lookup chain is broken
+	private void delete(int i)
+	{
+		pairs--;
+		int mask = table.length - 1;
+		int j = i;
+		while(true)
+		{
+			j = (j + 1) & mask;
+			if(table[j] == 0)
+				break;
+			int k = hash(table[j] >>> 4) & mask;
+			//Leave the pair in place if its home slot is cyclically within (i,j]
+			if(i <= j ? (i < k && k <= j) : (i < k || k <= j))
+				continue;
+			table[i] = table[j];
+			confidences[i] = confidences[j];
+			i = j;
+		}
+		table[i] = 0;
+	}
+
+	private HashMap<String,Set<String>> index()
+	{
+		if(index == null)
+		{
+			HashMap<String,Set<String>> map = new HashMap<String,Set<String>>();
+			for(long e : table)
+			{
+				if(e == 0)
+					continue;
+				String source = dictionary.get((int)(e >>> 34));
+				Set<String> targets = map.get(source);
+				if(targets == null)
+				{
+					targets = new HashSet<String>();
+					map.put(source, targets);
+				}
+				targets.add(dictionary.get((int)(e >>> 4) & MAX_ID));
+			}
+			index = map;
+		}
+		return index;
+	}
+
+	private static int hash(long pair)
+	{
+		pair *= 0x9E3779B97F4A7C15L;
+		return (int)(pair ^ (pair >>> 32));
+	}
+}
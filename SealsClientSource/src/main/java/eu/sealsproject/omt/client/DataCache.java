@@ -0,0 +1,290 @@
+package eu.sealsproject.omt.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * A local on-disk cache of the data items of the SEALS test data repository
+ * (TDRS). Data items are stored by the hash of their contents (keeping
+ * the extension of their file name), and indexed by their URL. Cached items
+ * are revalidated with conditional requests (ETag/If-Modified-Since), so
+ * unchanged items are never downloaded twice, and in offline mode they are
+ * served without contacting the repository. The index is append-only, and
+ * is rewritten without its superseded lines when the cache is opened, or
+ * when they become more than half of it.
+ * 
+ * @author Daniel Faria
+ */
+
+public class DataCache
+{
+	private File objects;
+	private File suites;
+	private File indexFile;
+	private boolean offline;
+	private HashMap<String,Entry> index;
+	//Number of lines in the index file
+	private int lines;
+	
+	/**
+	 * Opens the cache in the given folder, creating it if necessary
+	 * @param folder: the cache folder
+	 * @param offline: whether to serve data items exclusively from the cache
+	 * @throws IOException if the cache folder can't be created or read
+	 */
+	public DataCache(File folder, boolean offline) throws IOException
+	{
+		this.offline = offline;
+		objects = new File(folder, "objects");
+		suites = new File(folder, "suites");
+		if(!objects.isDirectory() && !objects.mkdirs() || !suites.isDirectory() && !suites.mkdirs())
+			throw new IOException("Could not create cache folder " + folder.getAbsolutePath());
+		indexFile = new File(folder, "index.txt");
+		index = new HashMap<String,Entry>();
+		lines = 0;
+		if(indexFile.exists())
+		{
+			//The index is append-only, so later lines override earlier ones
+			//(and lines that can't be read, e.g. cut off, are dropped)
+			BufferedReader reader = new BufferedReader(new FileReader(indexFile));
+			String line;
+			while((line = reader.readLine()) != null)
+			{
+				lines++;
+				String[] col = line.split("\t");
+				if(col.length != 4)
+					continue;
+				try
+				{
+					index.put(col[0], new Entry(col[1], col[2].equals("-") ? null : col[2], Long.parseLong(col[3])));
+				}
+				catch(NumberFormatException e)
+				{
+					//Skip the line
+				}
+			}
+			reader.close();
+			if(lines > index.size())
+				compact();
+		}
+	}
+	
+	/**
+	 * @return whether the cache is in offline mode
+	 */
+	public boolean isOffline()
+	{
+		return offline;
+	}
+	
+	/**
+	 * Retrieves a data item, downloading it only if it isn't cached
+	 * or has been modified in the repository
+	 * @param url: the URL of the data item in the repository
+	 * @return the local file URL of the cached data item, or null
+	 * if the data item doesn't exist (or isn't cached in offline mode)
+	 * or its URL is null or not an HTTP URL
+	 * @throws IOException if the data item can't be downloaded or stored
+	 */
+	public URL resolve(URL url) throws IOException
+	{
+		if(url == null)
+			return null;
+		String key = url.toString();
+		Entry cached;
+		synchronized(this)
+		{
+			cached = index.get(key);
+		}
+		if(cached != null && !new File(objects, cached.hash).exists())
+			cached = null;
+		if(offline)
+			return cached == null ? null : toURL(cached);
+		
+		HttpURLConnection con;
+		int code;
+		try
+		{
+			URLConnection c = url.openConnection();
+			if(!(c instanceof HttpURLConnection))
+				return null;
+			con = (HttpURLConnection) c;
+			con.setInstanceFollowRedirects(false);
+			if(cached != null)
+			{
+				if(cached.etag != null)
+					con.setRequestProperty("If-None-Match", cached.etag);
+				if(cached.lastModified > 0)
+					con.setIfModifiedSince(cached.lastModified);
+			}
+			code = con.getResponseCode();
+		}
+		catch(IOException e)
+		{
+			//If the repository can't be reached, fall back to the cached copy
+			if(cached == null)
+				throw e;
+			System.err.println("Unable to revalidate " + url + " - using cached copy (" + e.getMessage() + ")");
+			return toURL(cached);
+		}
+		if(code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null)
+		{
+			con.disconnect();
+			return toURL(cached);
+		}
+		if(code != HttpURLConnection.HTTP_OK)
+		{
+			con.disconnect();
+			return null;
+		}
+		
+		//Download the data item to a temporary file, hashing it as it is written
+		MessageDigest digest = Helper.newDigest();
+		File temp = File.createTempFile("download", ".tmp", objects);
+		InputStream in = con.getInputStream();
+		OutputStream out = new DigestOutputStream(new FileOutputStream(temp), digest);
+		try
+		{
+			byte[] buffer = new byte[65536];
+			int bytesRead;
+			while((bytesRead = in.read(buffer)) >= 0)
+				out.write(buffer, 0, bytesRead);
+		}
+		finally
+		{
+			in.close();
+			out.close();
+		}
+		String hash = Helper.toHex(digest.digest()) + extension(url, con);
+		File object = new File(objects, hash);
+		if(object.exists() || !temp.renameTo(object))
+			temp.delete();
+		Entry e = new Entry(hash, con.getHeaderField("ETag"), con.getLastModified());
+		synchronized(this)
+		{
+			index.put(key, e);
+			BufferedWriter writer = new BufferedWriter(new FileWriter(indexFile, true));
+			writer.append(line(key, e));
+			writer.close();
+			//Compact the index if most of its lines are superseded
+			if(++lines > 2 * index.size())
+				compact();
+		}
+		return toURL(e);
+	}
+	
+	/**
+	 * @param suite: the identifier of the test suite (repository, suite and version)
+	 * @return the cached list of test cases of the suite, or null if it isn't cached
+	 * @throws IOException if the list can't be read
+	 */
+	public List<String> getTestCases(String suite) throws IOException
+	{
+		File list = new File(suites, Helper.toHex(Helper.newDigest().digest(suite.getBytes("UTF-8"))));
+		if(!list.exists())
+			return null;
+		Vector<String> testCases = new Vector<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(list));
+		String line;
+		while((line = reader.readLine()) != null)
+			testCases.add(line);
+		reader.close();
+		return testCases;
+	}
+	
+	/**
+	 * Stores the list of test cases of a test suite in the cache
+	 * @param suite: the identifier of the test suite (repository, suite and version)
+	 * @param testCases: the list of test cases of the suite
+	 * @throws IOException if the list can't be written
+	 */
+	public void putTestCases(String suite, List<String> testCases) throws IOException
+	{
+		File list = new File(suites, Helper.toHex(Helper.newDigest().digest(suite.getBytes("UTF-8"))));
+		BufferedWriter writer = new BufferedWriter(new FileWriter(list));
+		for(String t : testCases)
+			writer.append(t + "\n");
+		writer.close();
+	}
+	
+	//Rewrites the index file with only the current entries (replacing it only
+	//once the new one is complete, so that the index is never lost)
+	private void compact() throws IOException
+	{
+		File temp = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+		BufferedWriter writer = new BufferedWriter(new FileWriter(temp));
+		try
+		{
+			for(String key : index.keySet())
+				writer.append(line(key, index.get(key)));
+		}
+		finally
+		{
+			writer.close();
+		}
+		if(!temp.renameTo(indexFile))
+		{
+			indexFile.delete();
+			if(!temp.renameTo(indexFile))
+				throw new IOException("Unable to write " + indexFile);
+		}
+		lines = index.size();
+	}
+	
+	//The line of the index file of an entry
+	private static String line(String key, Entry e)
+	{
+		return key + "\t" + e.hash + "\t" + (e.etag == null ? "-" : e.etag) + "\t" + e.lastModified + "\n";
+	}
+	
+	//The extension of the file name of a data item (with the dot), from its
+	//URL or else from the file name sent by the repository, or "" if it has none
+	private static String extension(URL url, HttpURLConnection con)
+	{
+		String name = url.getPath();
+		String disposition = con.getHeaderField("Content-Disposition");
+		if(name.lastIndexOf('.') <= name.lastIndexOf('/') && disposition != null && disposition.contains("filename="))
+			name = disposition.substring(disposition.indexOf("filename=") + 9).replace("\"", "").split(";")[0].trim();
+		name = name.substring(name.lastIndexOf('/') + 1);
+		int dot = name.lastIndexOf('.');
+		if(dot < 0 || !name.substring(dot + 1).matches("[A-Za-z0-9]{1,8}"))
+			return "";
+		return name.substring(dot);
+	}
+	
+	private URL toURL(Entry e) throws IOException
+	{
+		return new File(objects, e.hash).toURI().toURL();
+	}
+	
+	//An index entry: the file name of the data item (its hash and extension)
+	//and its HTTP validators
+	private static class Entry
+	{
+		private String hash;
+		private String etag;
+		private long lastModified;
+		
+		private Entry(String hash, String etag, long lastModified)
+		{
+			this.hash = hash;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+}
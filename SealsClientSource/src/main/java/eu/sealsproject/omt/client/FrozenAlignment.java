@@ -0,0 +1,298 @@
+package eu.sealsproject.omt.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+
+/**
+ * An immutable, read-optimized snapshot of an Alignment, for Alignments that
+ * are evaluated repeatedly (such as reference Alignments).
+ * Entity URIs are stored in a sorted array and each mapped pair is stored in
+ * canonical form (lowest identifier first) in a sorted array, in parallel
+ * with the mask of its relations and its confidence, so that a mapping is found by binary search
+ * in both orientations at once.
+ *
+ * @author Daniel Faria
+ */
+
+public class FrozenAlignment extends AbstractAlignment
+{
+	//Flags the pairs that were mapped from the highest to the lowest identifier
+	private static final byte FLIPPED = 0x10;
+	private static final byte RELATIONS = 0x0F;
+	private static final Relation[] VALUES = Relation.values();
+	//Sorted entity URIs (the identifier of a URI is its position)
+	private final String[] uris;
+	//Sorted canonical pairs of identifiers: [lowest id: 32 bits][highest id: 32 bits]
+	private final long[] pairs;
+	//Relations of each pair from the lowest to the highest identifier (and the FLIPPED flag)
+	private final byte[] masks;
+	//Confidence of each pair
+	private final float[] confidences;
+	private final int size;
+	//Source to targets index, built only if getSources or getTargets are called
+	private HashMap<String,Set<String>> index;
+
+	/**
+	 * Constructs a FrozenAlignment that is a snapshot of the given Alignment
+	 * @param a: the Alignment to freeze
+	 */
+	public FrozenAlignment(AbstractAlignment a)
+	{
+		TreeSet<String> entities = new TreeSet<String>();
+		int count = 0;
+		for(String source : a.getSources())
+		{
+			entities.add(source);
+			for(String target : a.getTargets(source))
+			{
+				entities.add(target);
+				count++;
+			}
+		}
+		uris = entities.toArray(new String[entities.size()]);
+		pairs = new long[count];
+		int i = 0;
+		for(String source : a.getSources())
+		{
+			int id1 = id(source);
+			for(String target : a.getTargets(source))
+				pairs[i++] = key(id1, id(target));
+		}
+		Arrays.sort(pairs);
+		masks = new byte[count];
+		confidences = new float[count];
+		for(i = 0; i < count; i++)
+		{
+			String lo = uris[(int)(pairs[i] >>> 32)];
+			String hi = uris[(int)pairs[i]];
+			confidences[i] = (float)a.getConfidence(lo, hi);
+			Vector<Relation> rels = a.getRelations(lo, hi);
+			if(rels != null)
+				masks[i] = mask(rels);
+			else
+				masks[i] = (byte)(Relation.reverse(mask(a.getRelations(hi, lo))) | FLIPPED);
+		}
+		size = a.size();
+	}
+
+	@Override
+	public void add(String uri1, String uri2, Relation r)
+	{
+		throw new UnsupportedOperationException("The alignment is frozen");
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2)
+	{
+		int id1 = id(uri1);
+		int id2 = id(uri2);
+		if(id1 < 0 || id2 < 0)
+			return false;
+		int i = Arrays.binarySearch(pairs, key(id1, id2));
+		return i > -1 && (id1 <= id2) == ((masks[i] & FLIPPED) == 0);
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2, Relation r)
+	{
+		int id1 = id(uri1);
+		int id2 = id(uri2);
+		if(id1 < 0 || id2 < 0)
+			return false;
+		int i = Arrays.binarySearch(pairs, key(id1, id2));
+		if(i < 0)
+			return false;
+		byte m = (byte)(masks[i] & RELATIONS);
+		if(id1 > id2)
+			m = Relation.reverse(m);
+		else if(id1 == id2)
+			m |= Relation.reverse(m);
+		return (m & r.mask()) != 0;
+	}
+
+	@Override
+	public int[] evaluation(AbstractAlignment other)
+	{
+		//Evaluation matrix
+		int[] eval = new int[3];
+		//False Positives
+		eval[1] = other.size();
+		for(int i = 0; i < pairs.length; i++)
+		{
+			//Restore the orientation in which the entities were mapped
+			String source = uris[(int)(pairs[i] >>> 32)];
+			String target = uris[(int)pairs[i]];
+			byte rels = (byte)(masks[i] & RELATIONS);
+			if((masks[i] & FLIPPED) != 0)
+			{
+				String s = source;
+				source = target;
+				target = s;
+				rels = Relation.reverse(rels);
+			}
+			//If there is an unknown relation between the entities, we ignore the mapping
+			if((rels & Relation.UNKNOWN.mask()) != 0)
+			{
+				//And if it is in the other Alignment we discount
+				//it, so it doesn't count as a False Positive
+				if(other.contains(source, target))
+					eval[1]--;
+				continue;
+			}
+			//Otherwise, we check if the mapping with each relation is in the other Alignment
+			for(Relation r : Relation.values(rels))
+			{
+				//If so, it is a True Positive, otherwise a False Negative
+				if(other.contains(source, target, r))
+					eval[0]++;
+				else
+					eval[2]++;
+			}
+		}
+		eval[1] -= eval[0];
+		return eval;
+	}
+
+	@Override
+	public void forEachMapping(MappingVisitor v)
+	{
+		for(int i = 0; i < pairs.length; i++)
+		{
+			String source = uris[(int)(pairs[i] >>> 32)];
+			String target = uris[(int)pairs[i]];
+			byte rels = (byte)(masks[i] & RELATIONS);
+			if((masks[i] & FLIPPED) != 0)
+			{
+				String s = source;
+				source = target;
+				target = s;
+				rels = Relation.reverse(rels);
+			}
+			for(Relation r : VALUES)
+				if((rels & r.mask()) != 0)
+					v.visit(source, target, r);
+		}
+	}
+
+	@Override
+	public double getConfidence(String uri1, String uri2)
+	{
+		int id1 = id(uri1);
+		int id2 = id(uri2);
+		if(id1 < 0 || id2 < 0)
+			return -1;
+		int i = Arrays.binarySearch(pairs, key(id1, id2));
+		if(i < 0)
+			return -1;
+		return confidences[i];
+	}
+
+	@Override
+	public FrozenAlignment freeze()
+	{
+		return this;
+	}
+
+	@Override
+	public Set<String> getSources()
+	{
+		return Collections.unmodifiableSet(index().keySet());
+	}
+
+	@Override
+	public Set<String> getTargets(String source)
+	{
+		Set<String> targets = index().get(source);
+		if(targets == null)
+			return null;
+		return Collections.unmodifiableSet(targets);
+	}
+
+	@Override
+	public Vector<Relation> getRelations(String source, String target)
+	{
+		int id1 = id(source);
+		int id2 = id(target);
+		if(id1 < 0 || id2 < 0)
+			return null;
+		int i = Arrays.binarySearch(pairs, key(id1, id2));
+		//A pair is only returned in the orientation in which it was mapped
+		//(and a self-mapping only with the relations it was mapped with)
+		if(i < 0 || (id1 <= id2) != ((masks[i] & FLIPPED) == 0))
+			return null;
+		byte m = (byte)(masks[i] & RELATIONS);
+		if(id1 > id2)
+			m = Relation.reverse(m);
+		Vector<Relation> rels = new Vector<Relation>();
+		for(Relation r : Relation.values(m))
+			rels.add(r);
+		return rels;
+	}
+
+	@Override
+	public void remove(String uri1, String uri2, Relation r)
+	{
+		throw new UnsupportedOperationException("The alignment is frozen");
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	//Returns the identifier of the URI, or -1 if it isn't in the Alignment
+	private int id(String uri)
+	{
+		int i = Arrays.binarySearch(uris, uri);
+		return i < 0 ? -1 : i;
+	}
+
+	private HashMap<String,Set<String>> index()
+	{
+		if(index == null)
+		{
+			HashMap<String,Set<String>> map = new HashMap<String,Set<String>>();
+			for(int i = 0; i < pairs.length; i++)
+			{
+				String source = uris[(int)(pairs[i] >>> 32)];
+				String target = uris[(int)pairs[i]];
+				if((masks[i] & FLIPPED) != 0)
+				{
+					String s = source;
+					source = target;
+					target = s;
+				}
+				Set<String> targets = map.get(source);
+				if(targets == null)
+				{
+					targets = new HashSet<String>();
+					map.put(source, targets);
+				}
+				targets.add(target);
+			}
+			index = map;
+		}
+		return index;
+	}
+
+	private static long key(int id1, int id2)
+	{
+		if(id1 > id2)
+			return ((long)id2 << 32) | id1;
+		return ((long)id1 << 32) | id2;
+	}
+
+	private static byte mask(Vector<Relation> rels)
+	{
+		byte m = 0;
+		for(Relation r : rels)
+			m |= r.mask();
+		return m;
+	}
+}
@@ -1,8 +1,11 @@
 package eu.sealsproject.omt.client;
 
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.semanticweb.owl.align.Alignment;
 import org.semanticweb.owl.align.AlignmentException;
@@ -16,9 +19,18 @@ import org.semanticweb.owl.align.Cell;
  * @author Daniel Faria
  */
 
-public class HashAlignment
+public class HashAlignment extends AbstractAlignment
 {
-	private HashMap<String,HashMap<String,Vector<Relation>>> alignment;
+	private static final Relation[] RELATIONS = Relation.values();
+	//Minimum number of mappings for an Alignment to be evaluated in parallel
+	private static final int PARALLEL_THRESHOLD = 50000;
+	//Minimum number of sources evaluated by each parallel task
+	private static final int MIN_RANGE = 1024;
+	//Source to target to the mask of the Relations between them
+	private HashMap<String,HashMap<String,Byte>> alignment;
+	//Confidences of the mapped pairs (in the same direction as in the alignment)
+	//that are lower than 1.0, which is the confidence of all other pairs
+	private HashMap<String,HashMap<String,Float>> confidences;
 	private int size;
 	
 	/**
@@ -26,7 +38,8 @@ public class HashAlignment
 	 */
 	public HashAlignment()
 	{
-		alignment = new HashMap<String,HashMap<String,Vector<Relation>>>();
+		alignment = new HashMap<String,HashMap<String,Byte>>();
+		confidences = new HashMap<String,HashMap<String,Float>>();
 		size = 0;
 	}
 	
@@ -44,7 +57,7 @@ public class HashAlignment
 				String uri1 = c.getObject1AsURI().toString();
 				String uri2 = c.getObject2AsURI().toString();
 				Relation r = Relation.parse(c.getRelation().getRelation());
-				add(uri1,uri2,r);
+				add(uri1,uri2,r,c.getStrength());
 			}
 			catch(AlignmentException e)
 			{
@@ -54,130 +67,120 @@ public class HashAlignment
 	}
 	
 	/**
-	 * Constructs a HashAlignment that is a copy of the given HashAlignment
-	 * @param other: the HashAlignment to copy
+	 * Constructs a HashAlignment that is a copy of the given Alignment
+	 * @param other: the Alignment to copy
 	 */
-	public HashAlignment(HashAlignment other)
+	public HashAlignment(AbstractAlignment other)
 	{
 		this();
-		for(String source : other.alignment.keySet())
-			for(String target : other.alignment.get(source).keySet())
-				for(Relation r : other.alignment.get(source).get(target))
-					add(source, target, r);
+		add(other);
 	}
 
+	@Override
+	public void add(String uri1, String uri2, Relation r)
+	{
+		add(uri1, uri2, r, 1.0);
+	}
+	
 	/**
-	 * Adds a mapping to the HashAlignment if it is new (i.e., the HashAlignment
-	 * doesn't contain the mapping or its reverse)
+	 * Adds a mapping with the given confidence to the HashAlignment if it is
+	 * new; the confidence of a pair of entities with more than one relation
+	 * is the highest confidence of its mappings
 	 * @param uri1: the URI of the source ontology entity
 	 * @param uri2: the URI of the target ontology entity
 	 * @param r: the mapping relation between the entities
+	 * @param confidence: the confidence of the mapping
 	 */
-	public void add(String uri1, String uri2, Relation r)
+	@Override
+	public void add(String uri1, String uri2, Relation r, double confidence)
 	{
+		byte rels = mask(uri1, uri2);
+		byte reverse = mask(uri2, uri1);
 		//If the mapping already exists in the HashAlignment, return
-		if(this.contains(uri1, uri2, r))
+		if(((rels | Relation.reverse(reverse)) & r.mask()) != 0)
 			return;
 		//Otherwise, we can increment the size and add the mapping
 		size++;
 		//If the classes are already mapped, add the new relation
-		if(this.contains(uri1, uri2))
-			alignment.get(uri1).get(uri2).add(r);
-		else if(this.contains(uri2, uri1))
-			alignment.get(uri2).get(uri1).add(r.reverse());
-		//Otherwise
+		if(rels != 0)
+		{
+			alignment.get(uri1).put(uri2, (byte)(rels | r.mask()));
+			setConfidence(uri1, uri2, Math.max(getConfidence(uri1, uri2), confidence));
+		}
+		else if(reverse != 0)
+		{
+			alignment.get(uri2).put(uri1, (byte)(reverse | r.reverse().mask()));
+			setConfidence(uri2, uri1, Math.max(getConfidence(uri2, uri1), confidence));
+		}
+		//Otherwise, we need to add the target (and the source, if it is new)
 		else
 		{
-			//We can create a new list with the relation
-			Vector<Relation> rel = new Vector<Relation>();
-			rel.add(r);
-			//If the source class is in the alignment, we just update its HashMap
-			if(alignment.containsKey(uri1))
-				//by adding the target and the relation list
-				alignment.get(uri1).put(uri2, rel);
-			//Otherwise, we need to create a new HashMap for the source
-			else
+			setConfidence(uri1, uri2, confidence);
+			HashMap<String,Byte> targets = alignment.get(uri1);
+			if(targets == null)
 			{
-				HashMap<String,Vector<Relation>> map = new HashMap<String,Vector<Relation>>();
-				//update it with the relation
-				map.put(uri2, rel);
-				//and add it to the alignment
-				alignment.put(uri1, map);
+				targets = new HashMap<String,Byte>();
+				alignment.put(uri1, targets);
 			}
+			targets.put(uri2, r.mask());
 		}
 	}
 	
-	/**
-	 * Adds all mappings in the given HashAlignment to this
-	 * @param other: the HashAlignment to add to this
-	 */
-	public void add(HashAlignment other)
+	@Override
+	public boolean contains(String uri1, String uri2)
 	{
-		for(String source : other.alignment.keySet())
-			for(String target : other.alignment.get(source).keySet())
-				for(Relation r : other.alignment.get(source).get(target))
-					add(source, target, r);
+		return mask(uri1, uri2) != 0;
 	}
 	
-	/**
-	 * Checks if two entities are mapped in the HashAlignment
-	 * regardless of relation or direction
-	 * @param uri1: the URI of the source ontology entity
-	 * @param uri2: the URI of the target ontology entity
-	 * @param r: the mapping relation between the entities
-	 * @return whether uri1 and uri2 are mapped in the HashAlignment
-	 */
-	public boolean contains(String uri1, String uri2)
+	@Override
+	public boolean contains(String uri1, String uri2, Relation r)
 	{
-		return  alignment.containsKey(uri1) && alignment.get(uri1).containsKey(uri2);
+		return ((mask(uri1, uri2) | reverseMask(uri1, uri2)) & r.mask()) != 0;
 	}
 	
-	/**
-	 * Checks if a given mapping is contained in the HashAlignment
-	 * @param uri1: the URI of the source ontology entity
-	 * @param uri2: the URI of the target ontology entity
-	 * @param r: the mapping relation between the entities
-	 * @return whether the mapping is containing in the HashAlignment
-	 */
-	public boolean contains(String uri1, String uri2, Relation r)
+	@Override
+	public int[] evaluation(AbstractAlignment other)
 	{
-		return (alignment.containsKey(uri1) && alignment.get(uri1).containsKey(uri2) && alignment.get(uri1).get(uri2).contains(r)) ||
-				(alignment.containsKey(uri2) &&	alignment.get(uri2).containsKey(uri1) && alignment.get(uri2).get(uri1).contains(r.reverse()));
+		String[] sources = alignment.keySet().toArray(new String[alignment.size()]);
+		int[] eval;
+		//Large Alignments are evaluated in parallel, by partitioning their sources
+		if(size >= PARALLEL_THRESHOLD && Evaluator.POOL.getParallelism() > 1)
+			eval = Evaluator.POOL.invoke(new Evaluator(this, other, sources, 0, sources.length));
+		else
+			eval = evaluation(other, sources, 0, sources.length);
+		//The False Positives are simply given by the mappings in the other
+		//HashAlignment that aren't True Positives or unknowns (which we counted)
+		eval[1] = other.size() - eval[0] - eval[1];
+		return eval;
 	}
 	
-	/**
-	 * @param other: the HashAlignment to evaluate with this
-	 * @return the classification of the other HashAlignment using this as
-	 * a reference: {True Positives, False Positives, False Negatives}
-	 */
-	public int[] evaluation(HashAlignment other)
+	//Evaluates the mappings of the given range of sources, returning
+	//{True Positives, unknowns in the other Alignment, False Negatives}
+	private int[] evaluation(AbstractAlignment other, String[] sources, int from, int to)
 	{
-		//Evaluation matrix
 		int[] eval = new int[3];
-		//True Positives
-		eval[0] = 0;
-		//False Positives
-		eval[1] = other.size();
-		//False Negatives
-		eval[2] = 0;
-		//Iterate through this alignment
-		for(String source : this.alignment.keySet())
+		for(int i = from; i < to; i++)
 		{
-			for(String target : this.alignment.get(source).keySet())
+			String source = sources[i];
+			for(Map.Entry<String,Byte> e : this.alignment.get(source).entrySet())
 			{
+				String target = e.getKey();
+				byte rels = e.getValue();
 				//If there is an unknown relation between the classes, we ignore the mapping
-				if(this.alignment.get(source).get(target).contains(Relation.UNKNOWN))
+				if((rels & Relation.UNKNOWN.mask()) != 0)
 				{
-					//And if it is in the other HashAlignment we discount
-					//it, so it doesn't count as a False Positive
+					//And if it is in the other HashAlignment we count it, so
+					//that it is discounted from the False Positives
 					if(other.contains(source, target))
-						eval[1]--;
+						eval[1]++;
 					continue;
 				}
 				//Otherwise, we check if the mapping with each relation (normally just one)
 				//is in the other HashAlignment
-				for(Relation r : this.alignment.get(source).get(target))
+				for(Relation r : RELATIONS)
 				{
+					if((rels & r.mask()) == 0)
+						continue;
 					//If so, it is a True Positive
 					if(other.contains(source, target, r))
 						eval[0]++;
@@ -187,27 +190,51 @@ public class HashAlignment
 				}
 			}
 		}
-		//The False Positives are simply given by the mappings in the other
-		//HashAlignment (which we already counted) that aren't True Positives
-		//or unknowns (which we already discounted)
-		eval[1] -= eval[0];
 		return eval;
 	}
 
-	
-	/**
-	 * @return the set of source ontology entity URIs in this alignment
-	 */
+	@Override
+	public void forEachMapping(MappingVisitor v)
+	{
+		for(Map.Entry<String,HashMap<String,Byte>> s : alignment.entrySet())
+		{
+			String source = s.getKey();
+			for(Map.Entry<String,Byte> t : s.getValue().entrySet())
+			{
+				byte rels = t.getValue();
+				for(Relation r : RELATIONS)
+					if((rels & r.mask()) != 0)
+						v.visit(source, t.getKey(), r);
+			}
+		}
+	}
+
+	@Override
+	public double getConfidence(String uri1, String uri2)
+	{
+		String s = uri1;
+		String t = uri2;
+		if(mask(s, t) == 0)
+		{
+			s = uri2;
+			t = uri1;
+			if(mask(s, t) == 0)
+				return -1;
+		}
+		HashMap<String,Float> targets = confidences.get(s);
+		if(targets == null)
+			return 1.0;
+		Float c = targets.get(t);
+		return c == null ? 1.0 : c;
+	}
+
+	@Override
 	public Set<String> getSources()
 	{
 		return alignment.keySet();
 	}
 	
-	/**
-	 * @param source: the source ontology entity URI to retrieve
-	 * @return the set of target ontology entity URIs aligned to
-	 * the given entity in this alignment
-	 */
+	@Override
 	public Set<String> getTargets(String source)
 	{
 		if(alignment.containsKey(source))
@@ -215,53 +242,128 @@ public class HashAlignment
 		return null;
 	}
 	
-	/**
-	 * @param source: the source ontology entity URI to retrieve
-	 * @param target: the target ontology entity URI to retrieve
-	 * @return the relation between the given entities
-	 */
+	@Override
 	public Vector<Relation> getRelations(String source, String target)
 	{
-		if(alignment.containsKey(source) && alignment.get(source).containsKey(target))
-			return alignment.get(source).get(target);
-		return null;
+		byte rels = mask(source, target);
+		if(rels == 0)
+			return null;
+		Vector<Relation> v = new Vector<Relation>();
+		for(Relation r : Relation.values(rels))
+			v.add(r);
+		return v;
 	}
 	
-	/**
-	 * Removes a mapping from the HashAlignment if it exists
-	 * @param uri1: the URI of the source ontology entity
-	 * @param uri2: the URI of the target ontology entity
-	 * @param r: the mapping relation between the entities
-	 */
+	@Override
 	public void remove(String uri1, String uri2, Relation r)
 	{
-		if(alignment.containsKey(uri1) && alignment.get(uri1).containsKey(uri2) && alignment.get(uri1).get(uri2).contains(r))
+		String s = uri1;
+		String t = uri2;
+		byte b = r.mask();
+		if((mask(s, t) & b) == 0)
 		{
-			if(r != Relation.UNKNOWN)
-				size--;
-			alignment.get(uri1).get(uri2).remove(r);
-			if(alignment.get(uri1).get(uri2).isEmpty())
-				alignment.get(uri1).remove(uri2);
-			if(alignment.get(uri1).isEmpty())
-				alignment.remove(uri1);
+			s = uri2;
+			t = uri1;
+			b = r.reverse().mask();
+			if((mask(s, t) & b) == 0)
+				return;
 		}
-		else if(alignment.containsKey(uri2) && alignment.get(uri2).containsKey(uri1) &&	alignment.get(uri2).get(uri1).contains(r.reverse()))
+		//Unknowns are counted in the size when added, so they are discounted
+		//when removed (the evaluation derives the False Positives from it)
+		size--;
+		HashMap<String,Byte> targets = alignment.get(s);
+		byte rels = (byte)(targets.get(t) & ~b);
+		if(rels != 0)
+			targets.put(t, rels);
+		else
 		{
-			if(r != Relation.UNKNOWN)
-				size--;
-			alignment.get(uri2).get(uri1).remove(r.reverse());
-			if(alignment.get(uri2).get(uri1).isEmpty())
-				alignment.get(uri2).remove(uri1);
-			if(alignment.get(uri2).isEmpty())
-				alignment.remove(uri2);
+			targets.remove(t);
+			if(targets.isEmpty())
+				alignment.remove(s);
+			setConfidence(s, t, 1.0);
 		}
 	}
 	
-	/**
-	 * @return the size of the HashAlignment
-	 */
+	@Override
 	public int size()
 	{
 		return size;
 	}
+	
+	//Evaluates a range of sources of a HashAlignment, splitting it in halves
+	//until the ranges are small enough to be evaluated sequentially
+	private static class Evaluator extends RecursiveTask<int[]>
+	{
+		private static final long serialVersionUID = 1L;
+		//The pool is only created if a large Alignment is evaluated
+		private static final ForkJoinPool POOL = new ForkJoinPool();
+		private final HashAlignment a;
+		private final AbstractAlignment other;
+		private final String[] sources;
+		private final int from;
+		private final int to;
+		
+		Evaluator(HashAlignment a, AbstractAlignment other, String[] sources, int from, int to)
+		{
+			this.a = a;
+			this.other = other;
+			this.sources = sources;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected int[] compute()
+		{
+			//Split into a few ranges per thread, so that the load is balanced
+			//even if some sources have many more targets than others
+			int grain = Math.max(MIN_RANGE, sources.length / (8 * POOL.getParallelism()));
+			if(to - from <= grain)
+				return a.evaluation(other, sources, from, to);
+			int mid = (from + to) >>> 1;
+			Evaluator left = new Evaluator(a, other, sources, from, mid);
+			left.fork();
+			int[] eval = new Evaluator(a, other, sources, mid, to).compute();
+			int[] l = left.join();
+			for(int i = 0; i < eval.length; i++)
+				eval[i] += l[i];
+			return eval;
+		}
+	}
+	
+	//Sets the confidence of the pair from uri1 to uri2 (only confidences
+	//lower than 1.0 are stored)
+	private void setConfidence(String uri1, String uri2, double confidence)
+	{
+		HashMap<String,Float> targets = confidences.get(uri1);
+		if(confidence >= 1.0)
+		{
+			if(targets != null && targets.remove(uri2) != null && targets.isEmpty())
+				confidences.remove(uri1);
+			return;
+		}
+		if(targets == null)
+		{
+			targets = new HashMap<String,Float>();
+			confidences.put(uri1, targets);
+		}
+		targets.put(uri2, (float)confidence);
+	}
+	
+	//Returns the mask of the relations from uri1 to uri2 (0 if they aren't mapped)
+	private byte mask(String uri1, String uri2)
+	{
+		HashMap<String,Byte> targets = alignment.get(uri1);
+		if(targets == null)
+			return 0;
+		Byte rels = targets.get(uri2);
+		return rels == null ? 0 : rels;
+	}
+	
+	//Returns the mask of the relations from uri1 to uri2 that are stored
+	//in the other direction, i.e., from uri2 to uri1 (0 if there are none)
+	private byte reverseMask(String uri1, String uri2)
+	{
+		return Relation.reverse(mask(uri2, uri1));
+	}
 }
\ No newline at end of file
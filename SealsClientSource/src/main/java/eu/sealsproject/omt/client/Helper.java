@@ -1,13 +1,59 @@
 package eu.sealsproject.omt.client;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Helper {
 
+    //How the files of the tool package are deployed into SEALS_HOME
+    public enum Link {
+        COPY, HARD, SYM
+    }
+
+    //The record of the files deployed into SEALS_HOME, so that later
+    //deployments only copy the files that changed
+    private static final String MANIFEST = ".seals-deploy";
+
+    //The suffix of the directory where the contents of SEALS_HOME are moved
+    //when it is cleared, to be deleted in the background (see trash)
+    private static final String TRASH = ".seals-trash";
+
+    //Number of files copied at a time
+    private static final int COPIERS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
     public static void copyFiles(File src, File dest) throws IOException {
         //Check to ensure that the source is valid...
         if (!src.exists()) {
@@ -15,54 +61,82 @@ public class Helper {
         } else if (!src.canRead()) { //check to ensure we have rights to the source...
             throw new IOException("copyFiles: No right to source: " + src.getAbsolutePath() + ".");
         }
-        //is this a directory copy?
-        if (src.isDirectory()) {
-            if (!dest.exists()) { //does the destination already exist?
-                //if not we need to make it exist if possible (note this is mkdirs not mkdir)
-                if (!dest.mkdirs()) {
-                    throw new IOException("copyFiles: Could not create direcotry: " + dest.getAbsolutePath() + ".");
-                }
-            }
-            //get a listing of files...
-            String list[] = src.list();
-            //copy all the files in the list.
-            for (int i = 0; i < list.length; i++) {
-                File dest1 = new File(dest, list[i]);
-                File src1 = new File(src, list[i]);
-                copyFiles(src1, dest1);
-            }
-        } else {
-            //This was not a directory, so lets just copy the file
-            FileInputStream fin = null;
-            FileOutputStream fout = null;
-            byte[] buffer = new byte[4096]; //Buffer 4K at a time (you can change this).
-            int bytesRead;
-            try {
-                //open the files for input and output
-                fin = new FileInputStream(src);
-                fout = new FileOutputStream(dest);
-                //while bytesRead indicates a successful read, lets write...
-                while ((bytesRead = fin.read(buffer)) >= 0) {
-                    fout.write(buffer, 0, bytesRead);
+        final Path from = src.toPath();
+        final Path to = dest.toPath();
+        final Copier copier = new Copier();
+        try {
+            Files.walkFileTree(from, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    Path target = to.resolve(from.relativize(dir).toString());
+                    try {
+                        Files.createDirectories(target);
+                    } catch (IOException e) {
+                        throw new IOException("copyFiles: Could not create direcotry: " + target.toAbsolutePath() + ".", e);
+                    }
+                    return FileVisitResult.CONTINUE;
                 }
 
-                dest.setExecutable(true);
-
-            } catch (IOException e) { //Error copying file... 
-                IOException wrapper = new IOException("copyFiles: Unable to copy file: "
-                        + src.getAbsolutePath() + "to" + dest.getAbsolutePath() + ".");
-                wrapper.initCause(e);
-                wrapper.setStackTrace(e.getStackTrace());
-                throw wrapper;
-            } finally { //Ensure that the files are closed (if they were open).
-                if (fin != null) {
-                    fin.close();
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    final File src1 = file.toFile();
+                    final File dest1 = to.resolve(from.relativize(file).toString()).toFile();
+                    copier.submit(new Callable<Void>() {
+                        public Void call() throws IOException {
+                            try {
+                                transfer(src1, dest1);
+                            } catch (IOException e) { //Error copying file...
+                                throw new IOException("copyFiles: Unable to copy file: "
+                                        + src1.getAbsolutePath() + " to " + dest1.getAbsolutePath() + ".", e);
+                            }
+                            return null;
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
                 }
-                if (fout != null) {
-                    fout.close();
+            });
+            copier.await();
+        } finally {
+            copier.close();
+        }
+    }
+
+    //Copies a file with a zero-copy transfer between the file channels
+    private static void transfer(File src, File dest) throws IOException {
+        FileInputStream fin = new FileInputStream(src);
+        try {
+            FileOutputStream fout = new FileOutputStream(dest);
+            try {
+                FileChannel in = fin.getChannel();
+                FileChannel out = fout.getChannel();
+                long size = in.size();
+                for (long done = 0; done < size; ) {
+                    done += in.transferTo(done, size - done, out);
                 }
+            } finally {
+                fout.close();
             }
+        } finally {
+            fin.close();
         }
+        dest.setExecutable(true);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) { //every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
     }
 
     public static void stopProgram(String message) {
@@ -76,22 +150,307 @@ public class Helper {
     }
 
     static public void deleteDirectory(File path, int depth) {
-        if (path.exists()) {
-            File[] files = path.listFiles();
-            for (int i = 0; i < files.length; i++) {
-                if (files[i].isDirectory()) {
-                    deleteDirectory(files[i], depth + 1);
-                } else {
-                    files[i].delete();
+        if (Files.isDirectory(path.toPath())) {
+            delete(path.toPath(), depth > 0);
+        }
+    }
+
+    //Clears a directory by moving its contents into its trash directory,
+    //which is deleted in the background by the next deployment (so the
+    //directory is cleared at once, however large its contents)
+    public static void clearDirectory(File path) {
+        Path dir = path.toPath();
+        Path trash = trash(dir);
+        try {
+            Files.createDirectories(trash);
+            Path bin = Files.createTempDirectory(trash, "clear-");
+            DirectoryStream<Path> contents = Files.newDirectoryStream(dir);
+            try {
+                for (Path p : contents) {
+                    if (!p.toAbsolutePath().normalize().equals(trash)) {
+                        Files.move(p, bin.resolve(p.getFileName()), StandardCopyOption.ATOMIC_MOVE);
+                    }
+                }
+            } finally {
+                contents.close();
+            }
+        } catch (IOException e) { //e.g., if the trash is on another file system
+            System.out.println(">>> Could not move files to " + trash.toAbsolutePath() + " (" + e + "), deleting them");
+            deleteDirectory(path, 0);
+        }
+    }
+
+    //The trash directory of a directory: a hidden sibling of it (so that it is
+    //on the same file system, but not in the directory), or a subdirectory if
+    //it has no parent
+    private static Path trash(Path dir) {
+        dir = dir.toAbsolutePath().normalize();
+        Path parent = dir.getParent();
+        if (parent == null || dir.getFileName() == null) {
+            return dir.resolve(TRASH);
+        }
+        return parent.resolve("." + dir.getFileName() + TRASH);
+    }
+
+    //Deletes the contents of the trash directory of a directory (left by
+    //clearDirectory) in a background thread (only those already there, so
+    //that it doesn't interfere with a later clearDirectory)
+    private static void emptyTrash(File path) {
+        Path trash = trash(path.toPath());
+        if (!Files.isDirectory(trash)) {
+            return;
+        }
+        final List<Path> bins = new ArrayList<Path>();
+        try {
+            DirectoryStream<Path> contents = Files.newDirectoryStream(trash);
+            try {
+                for (Path p : contents) {
+                    bins.add(p);
+                }
+            } finally {
+                contents.close();
+            }
+        } catch (IOException e) { //Left for the next time
+            return;
+        }
+        if (bins.isEmpty()) {
+            return;
+        }
+        Thread cleaner = new Thread(new Runnable() {
+            public void run() {
+                for (Path bin : bins) {
+                    delete(bin, true);
+                }
+            }
+        }, "seals-cleanup");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    //Deletes a file tree as far as possible, without following symbolic
+    //links (which are deleted, rather than their targets)
+    private static void delete(final Path root, final boolean withRoot) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    deleteIfExists(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (withRoot || !dir.equals(root)) {
+                        deleteIfExists(dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            //Nothing else can be deleted
+        }
+    }
+
+    private static void deleteIfExists(Path p) {
+        try {
+            Files.deleteIfExists(p);
+        } catch (IOException e) {
+            //Left behind, as before
+        }
+    }
+
+    //Lists the files under a directory by path relative to it (which must exist)
+    private static void listFiles(File dir, final Map<String, File> files) throws IOException {
+        if (!dir.isDirectory()) {
+            throw new IOException("listFiles: Can not find source: " + dir.getAbsolutePath() + ".");
+        }
+        final Path root = dir.toPath();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.put(root.relativize(file).toString().replace(File.separatorChar, '/'), file.toFile());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    //Deploys the files to the target directory (a few at a time), with the
+    //given link mode except for the copies, skipping those that are the same
+    //as recorded in its manifest (by size and modification time, or else by
+    //SHA-256), and deleting those that were deployed but are gone
+    private static void deployFiles(Map<String, File> files, Set<String> copies, File target, Link link) throws IOException {
+        File manifest = new File(target, MANIFEST);
+        Map<String, String[]> deployed = readManifest(manifest);
+        //Remove the manifest while deploying, so that an interrupted
+        //deployment is redone from scratch
+        manifest.delete();
+        final String[][] entries = new String[files.size()][];
+        final AtomicInteger skipped = new AtomicInteger(0);
+        Copier copier = new Copier();
+        try {
+            int i = 0;
+            for (Map.Entry<String, File> f : files.entrySet()) {
+                final int index = i++;
+                final File src = f.getValue();
+                final File dest = new File(target, f.getKey());
+                final String[] entry = deployed.remove(f.getKey());
+                final Link mode = copies.contains(f.getKey()) ? Link.COPY : link;
+                copier.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        entries[index] = entry == null ? null : current(entry, src, dest, mode);
+                        if (entries[index] != null) {
+                            skipped.incrementAndGet();
+                        } else {
+                            entries[index] = deployFile(src, dest, mode);
+                        }
+                        return null;
+                    }
+                });
+            }
+            copier.await();
+        } finally {
+            copier.close();
+        }
+        //Delete the files of previous deployments that are no longer in the package
+        for (String path : deployed.keySet()) {
+            new File(target, path).delete();
+        }
+        Map<String, String[]> manifestEntries = new LinkedHashMap<String, String[]>();
+        int i = 0;
+        for (String path : files.keySet()) {
+            manifestEntries.put(path, entries[i++]);
+        }
+        writeManifest(manifest, manifestEntries);
+        if (skipped.get() > 0) {
+            System.out.println(">>> " + skipped.get() + " of " + files.size() + " files were already deployed");
+        }
+    }
+
+    //Checks if a deployed file is still current, returning its (updated)
+    //manifest entry if so, or null if it must be deployed again
+    //(entry: link mode, size, source time, target time, SHA-256 or "-" if
+    //it wasn't needed yet)
+    private static String[] current(String[] entry, File src, File dest, Link link) throws IOException {
+        if (!entry[0].equals(link.name()) || !dest.exists()) {
+            return null;
+        }
+        Path from = src.toPath().toAbsolutePath();
+        Path to = dest.toPath();
+        if (link == Link.SYM) {
+            return Files.isSymbolicLink(to) && Files.readSymbolicLink(to).equals(from) ? entry : null;
+        }
+        if (link == Link.HARD) {
+            return Files.isSameFile(to, from) ? entry : null;
+        }
+        //The copy must not have been modified since it was deployed
+        if (Files.isSymbolicLink(to) || dest.length() != Long.parseLong(entry[1])
+                || dest.lastModified() != Long.parseLong(entry[3]) || src.length() != dest.length()) {
+            return null;
+        }
+        if (src.lastModified() == Long.parseLong(entry[2])) {
+            return entry;
+        }
+        //The source was touched: compare its contents with the (unmodified) copy
+        String copy = entry[4].equals("-") ? hash(dest) : entry[4];
+        if (!hash(src).equals(copy)) {
+            return null;
+        }
+        entry[2] = Long.toString(src.lastModified());
+        entry[4] = copy;
+        return entry;
+    }
+
+    //Copies or links a file, returning its manifest entry
+    private static String[] deployFile(File src, File dest, Link link) throws IOException {
+        Files.createDirectories(dest.getParentFile().toPath());
+        Path from = src.toPath().toAbsolutePath();
+        Path to = dest.toPath();
+        //Never write through a link to the package
+        Files.deleteIfExists(to);
+        if (link == Link.SYM) {
+            Files.createSymbolicLink(to, from);
+        } else if (link == Link.HARD) {
+            try {
+                Files.createLink(to, from);
+            } catch (IOException e) { //e.g., if SEALS_HOME is in another file system
+                System.out.println(">>> Could not link " + src.getAbsolutePath() + ", copying it instead");
+                link = Link.COPY;
+                transfer(src, dest);
+            }
+        } else {
+            transfer(src, dest);
+        }
+        return new String[]{link.name(), Long.toString(dest.length()),
+            Long.toString(src.lastModified()), Long.toString(dest.lastModified()), "-"};
+    }
+
+    private static String hash(File f) throws IOException {
+        MessageDigest digest = newDigest();
+        InputStream in = new DigestInputStream(new FileInputStream(f), digest);
+        try {
+            byte[] buffer = new byte[1 << 16];
+            while (in.read(buffer) >= 0) {
+                //Read the whole file through the digest
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static Map<String, String[]> readManifest(File manifest) {
+        Map<String, String[]> entries = new HashMap<String, String[]>();
+        if (!manifest.exists()) {
+            return entries;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length == 6) {
+                        entries.put(fields[0], new String[]{fields[1], fields[2], fields[3], fields[4], fields[5]});
+                    }
                 }
+            } finally {
+                in.close();
             }
+        } catch (IOException e) { //an unreadable manifest means a full deployment
+            System.out.println(">>> Could not read " + manifest.getAbsolutePath() + ", deploying all files");
+            entries.clear();
         }
-        if (depth > 0) {
-            path.delete();
+        return entries;
+    }
+
+    private static void writeManifest(File manifest, Map<String, String[]> entries) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(manifest), "UTF-8"));
+        try {
+            for (Map.Entry<String, String[]> e : entries.entrySet()) {
+                out.write(e.getKey());
+                for (String field : e.getValue()) {
+                    out.write("\t" + field);
+                }
+                out.write("\n");
+            }
+        } finally {
+            out.close();
         }
     }
 
     public static String deployPackage(String packageLocation) {
+        return deployPackage(packageLocation, Link.COPY);
+    }
+
+    //Deploys the lib and conf directories of the package into SEALS_HOME,
+    //copying or linking only the files that aren't already deployed
+    public static String deployPackage(String packageLocation, Link link) {
         Map<String, String> env = System.getenv();
         String sealsHome = env.get("SEALS_HOME");
         if (sealsHome != null) {
@@ -105,11 +464,20 @@ public class Helper {
             }
 
             System.out.println(">>> Preparing environment ...");
+            //Finish deleting the files of previous runs while this one runs
+            emptyTrash(sealsHomeDir);
             File from1 = new File(packageLocation + System.getProperty("file.separator") + "lib");
+            File from2 = new File(packageLocation + System.getProperty("file.separator") + "conf");
             try {
-                copyFiles(from1, sealsHomeDir);
-                File from2 = new File(packageLocation + System.getProperty("file.separator") + "conf");
-                copyFiles(from2, sealsHomeDir);
+                //Both directories are deployed to SEALS_HOME (conf over lib); conf
+                //is always copied, since tools may write to their configuration
+                //files, which would change the package through a link
+                Map<String, File> files = new LinkedHashMap<String, File>();
+                Map<String, File> conf = new LinkedHashMap<String, File>();
+                listFiles(from1, files);
+                listFiles(from2, conf);
+                files.putAll(conf);
+                deployFiles(files, conf.keySet(), sealsHomeDir, link);
             } catch (IOException e) {
                 System.out.println(">>> Could not copy required files to " + sealsHomeDir.getAbsolutePath() + " check permissions");
                 System.out.println(">>> Caught Exception: " + e);
@@ -128,4 +496,48 @@ public class Helper {
         return sealsHome;
 
     }
+
+    //Runs file copies a few at a time in daemon threads, failing with the first error
+    private static class Copier {
+
+        private final ExecutorService pool;
+        private final List<Future<Void>> copies = new ArrayList<Future<Void>>();
+
+        Copier() {
+            pool = Executors.newFixedThreadPool(COPIERS, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "seals-copier");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        void submit(Callable<Void> copy) {
+            copies.add(pool.submit(copy));
+        }
+
+        //Waits for all the copies to finish
+        void await() throws IOException {
+            pool.shutdown();
+            try {
+                for (Future<Void> f : copies) {
+                    f.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("copy interrupted");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        //Stops the copies that are still running (after an error)
+        void close() {
+            pool.shutdownNow();
+        }
+    }
 }
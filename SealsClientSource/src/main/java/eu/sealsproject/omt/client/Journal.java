@@ -0,0 +1,195 @@
+package eu.sealsproject.omt.client;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+
+/**
+ * An append-only journal of the test cases completed in a test suite run,
+ * which enables resuming an interrupted run without repeating them.
+ * Each line of the journal records one test case:
+ * Test Case ID, Run Time, Prefetch Time, Output Alignment URL, TP, FP, FN,
+ * Oracle TP, Oracle FP, Oracle FN, Output Hash, Notes, Best Threshold and
+ * Best F-measure (tab-separated, with "-" for values that aren't available).
+ * Lines that can't be read (e.g., cut off when the Client was killed) are
+ * skipped, so that their test cases are run again.
+ * 
+ * @author Daniel Faria
+ */
+
+public class Journal
+{
+	private static final int COLUMNS = 14;
+	private File file;
+	private HashMap<String,TestCase> entries;
+	private BufferedWriter writer;
+	
+	/**
+	 * Opens the journal in the given file
+	 * @param file: the journal file
+	 * @param resume: whether to keep the test cases already in the journal
+	 * (otherwise the journal is restarted)
+	 * @throws IOException if the journal can't be read or written
+	 */
+	public Journal(File file, boolean resume) throws IOException
+	{
+		this.file = file;
+		entries = new HashMap<String,TestCase>();
+		if(resume && file.exists())
+			load();
+		else if(file.exists())
+			file.delete();
+		writer = new BufferedWriter(new FileWriter(file, true));
+	}
+	
+	/**
+	 * Records a completed test case in the journal
+	 * @param tc: the test case to record
+	 * @throws IOException if the journal can't be written
+	 */
+	public synchronized void append(TestCase tc) throws IOException
+	{
+		String line = tc.id + "\t" + (tc.runTime > -1 ? String.valueOf(tc.runTime) : "-") + "\t" +
+				(tc.prefetchTime > -1 ? String.valueOf(tc.prefetchTime) : "-") + "\t" + toString(tc.alignment) + "\t" + toString(tc.classification) + "\t" +
+				toString(tc.oracleClassification) + "\t" + toString(tc.hash) + "\t" + toString(tc.note) + "\t" +
+				(tc.bestThreshold > -1 ? String.valueOf(tc.bestThreshold) : "-") + "\t" + (tc.bestF > -1 ? String.valueOf(tc.bestF) : "-");
+		writer.append(line + "\n");
+		writer.flush();
+		entries.put(tc.id, tc);
+	}
+	
+	/**
+	 * Closes the journal
+	 */
+	public synchronized void close()
+	{
+		try
+		{
+			writer.close();
+		}
+		catch(IOException e)
+		{
+			System.err.println("Error closing journal '" + file + "' - " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @param testCaseId: the identifier of the test case to retrieve
+	 * @return the test case recorded in the journal with the given identifier
+	 * or null if it isn't in the journal
+	 */
+	public synchronized TestCase get(String testCaseId)
+	{
+		return entries.get(testCaseId);
+	}
+	
+	/**
+	 * @return the number of test cases in the journal
+	 */
+	public synchronized int size()
+	{
+		return entries.size();
+	}
+	
+	//Reads the test cases recorded in the journal file
+	private void load() throws IOException
+	{
+		//Cut off the last line if it is incomplete (e.g., if the Client was killed
+		//while writing it), so that the lines appended from now on start on their own
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try
+		{
+			long end = raf.length();
+			for(; end > 0; end--)
+			{
+				raf.seek(end - 1);
+				if(raf.read() == '\n')
+					break;
+			}
+			raf.setLength(end);
+		}
+		finally
+		{
+			raf.close();
+		}
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		String line;
+		while((line = reader.readLine()) != null)
+		{
+			TestCase tc = parse(line);
+			if(tc != null)
+				entries.put(tc.id, tc);
+		}
+		reader.close();
+	}
+	
+	//Parses a line of the journal, returning null if it is incomplete or
+	//corrupt (e.g., if the Client was killed while writing it)
+	private static TestCase parse(String line)
+	{
+		String[] col = line.split("\t", -1);
+		if(col.length != COLUMNS)
+			return null;
+		try
+		{
+			TestCase tc = new TestCase(col[0]);
+			if(!col[1].equals("-"))
+				tc.runTime = Long.parseLong(col[1]);
+			if(!col[2].equals("-"))
+				tc.prefetchTime = Long.parseLong(col[2]);
+			if(!col[3].equals("-"))
+				tc.alignment = new URL(col[3]);
+			tc.classification = parseClassification(col, 4);
+			tc.oracleClassification = parseClassification(col, 7);
+			if(!col[10].equals("-"))
+				tc.hash = col[10];
+			if(!col[11].equals("-"))
+				tc.note = col[11];
+			if(!col[12].equals("-"))
+				tc.bestThreshold = Double.parseDouble(col[12]);
+			if(!col[13].equals("-"))
+				tc.bestF = Double.parseDouble(col[13]);
+			return tc;
+		}
+		catch(NumberFormatException e)
+		{
+			return null;
+		}
+		catch(MalformedURLException e)
+		{
+			return null;
+		}
+	}
+	
+	//Parses a classification {TP, FP, FN} starting at the given column
+	private static int[] parseClassification(String[] col, int start)
+	{
+		if(col[start].equals("-"))
+			return null;
+		int[] classif = new int[3];
+		for(int i = 0; i < 3; i++)
+			classif[i] = Integer.parseInt(col[start+i]);
+		return classif;
+	}
+	
+	private static String toString(int[] classif)
+	{
+		if(classif == null)
+			return "-\t-\t-";
+		return classif[0] + "\t" + classif[1] + "\t" + classif[2];
+	}
+	
+	private static String toString(Object o)
+	{
+		if(o == null)
+			return "-";
+		return o.toString();
+	}
+}
@@ -0,0 +1,499 @@
+package eu.sealsproject.omt.client;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * A read-only Alignment backed by a memory-mapped binary alignment file, so
+ * that an Alignment can be searched and evaluated without being parsed into
+ * the heap. The file consists of:
+ * - a header: magic number, version, size, number of entities, number of
+ *   pairs and length of the string data (ints)
+ * - the string table: the offset of each entity URI in the string data (ints)
+ *   followed by the string data (the URIs in UTF-8, sorted byte-wise)
+ * - the pair table: the canonical pairs of entity identifiers (lowest first)
+ *   sorted (longs)
+ * - the confidence column (floats) and the relation column (bytes), with the
+ *   mask of the relations of each pair from the lowest to the highest identifier
+ *
+ * @author Daniel Faria
+ */
+
+public class MappedAlignment extends AbstractAlignment
+{
+	private static final int MAGIC = 0x4F4D5441;
+	private static final int VERSION = 1;
+	private static final int HEADER = 32;
+	//Flags the pairs that were mapped from the highest to the lowest identifier
+	private static final byte FLIPPED = 0x10;
+	private static final byte RELATIONS = 0x0F;
+	private static final Relation[] VALUES = Relation.values();
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	//Orders the URIs by their unsigned UTF-8 bytes
+	private static final Comparator<byte[]> BYTES = new Comparator<byte[]>()
+	{
+		@Override
+		public int compare(byte[] a, byte[] b)
+		{
+			int n = Math.min(a.length, b.length);
+			for(int i = 0; i < n; i++)
+				if(a[i] != b[i])
+					return (a[i] & 0xFF) - (b[i] & 0xFF);
+			return a.length - b.length;
+		}
+	};
+
+	//The mapped file (only absolute reads are used, so it can be shared by threads)
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int entities;
+	private final int pairs;
+	//Positions of the sections of the file
+	private final int offsets;
+	private final int strings;
+	private final int pairTable;
+	private final int confidences;
+	private final int relations;
+	//Source to targets index, built only if getSources or getTargets are called
+	private HashMap<String,Set<String>> index;
+
+	/**
+	 * Maps a binary alignment file
+	 * @param file: the binary alignment file to map
+	 * @throws IOException if the file can't be mapped or isn't a binary alignment file
+	 */
+	public MappedAlignment(File file) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			if(channel.size() < HEADER || channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Not a binary alignment file: " + file);
+			//The mapping remains valid after the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			raf.close();
+		}
+		if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+			throw new IOException("Not a binary alignment file: " + file);
+		size = buffer.getInt(8);
+		entities = buffer.getInt(12);
+		pairs = buffer.getInt(16);
+		int stringBytes = buffer.getInt(20);
+		if(size < 0 || entities < 0 || pairs < 0 || stringBytes < 0)
+			throw new IOException("Corrupt binary alignment file: " + file);
+		//The sections are sized in long arithmetic, so that a corrupt header
+		//can't overflow them into the file
+		long end = (HEADER + 4 * (entities + 1L) + stringBytes + 7) & ~7L;
+		end += 13L * pairs;
+		if(end > buffer.capacity())
+			throw new IOException("Truncated binary alignment file: " + file);
+		offsets = HEADER;
+		strings = offsets + 4 * (entities + 1);
+		pairTable = align(strings + stringBytes);
+		confidences = pairTable + 8 * pairs;
+		relations = confidences + 4 * pairs;
+	}
+
+	/**
+	 * Writes an Alignment to a binary alignment file
+	 * @param a: the Alignment to write
+	 * @param file: the binary alignment file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public static void write(AbstractAlignment a, File file) throws IOException
+	{
+		//Build the string table and count the pairs (the Alignment is traversed
+		//with forEachMapping, since getSources and getTargets may build an index
+		//of it in the heap, and the mappings of each pair are visited together)
+		final HashSet<String> uris = new HashSet<String>();
+		final int[] count = new int[1];
+		a.forEachMapping(new MappingVisitor()
+		{
+			private String source;
+			private String target;
+
+			@Override
+			public void visit(String s, String t, Relation r)
+			{
+				if(s.equals(source) && t.equals(target))
+					return;
+				source = s;
+				target = t;
+				uris.add(s);
+				uris.add(t);
+				count[0]++;
+			}
+		});
+		byte[][] bytes = new byte[uris.size()][];
+		int i = 0;
+		for(String uri : uris)
+			bytes[i++] = uri.getBytes(UTF8);
+		Arrays.sort(bytes, BYTES);
+		final HashMap<String,Integer> ids = new HashMap<String,Integer>();
+		int stringBytes = 0;
+		for(i = 0; i < bytes.length; i++)
+		{
+			ids.put(new String(bytes[i], UTF8), i);
+			stringBytes += bytes[i].length;
+		}
+		//Build the pair table
+		final long[] pairTable = new long[count[0]];
+		a.forEachMapping(new MappingVisitor()
+		{
+			private String source;
+			private String target;
+			private int i = 0;
+
+			@Override
+			public void visit(String s, String t, Relation r)
+			{
+				if(s.equals(source) && t.equals(target))
+					return;
+				source = s;
+				target = t;
+				pairTable[i++] = key(ids.get(s), ids.get(t));
+			}
+		});
+		Arrays.sort(pairTable);
+		//Write the file under a temporary name, so that it is never read incomplete
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(a.size());
+			out.writeInt(bytes.length);
+			out.writeInt(count[0]);
+			out.writeInt(stringBytes);
+			out.writeLong(0);
+			int offset = 0;
+			for(byte[] b : bytes)
+			{
+				out.writeInt(offset);
+				offset += b.length;
+			}
+			out.writeInt(offset);
+			for(byte[] b : bytes)
+				out.write(b);
+			int position = HEADER + 4 * (bytes.length + 1) + stringBytes;
+			for(int pad = align(position) - position; pad > 0; pad--)
+				out.writeByte(0);
+			for(long p : pairTable)
+				out.writeLong(p);
+			for(long p : pairTable)
+				out.writeFloat((float)a.getConfidence(new String(bytes[(int)(p >>> 32)], UTF8), new String(bytes[(int)p], UTF8)));
+			for(long p : pairTable)
+			{
+				String lo = new String(bytes[(int)(p >>> 32)], UTF8);
+				String hi = new String(bytes[(int)p], UTF8);
+				Vector<Relation> rels = a.getRelations(lo, hi);
+				if(rels != null)
+					out.writeByte(mask(rels));
+				else
+					out.writeByte(Relation.reverse(mask(a.getRelations(hi, lo))) | FLIPPED);
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+		if(!temp.renameTo(file))
+		{
+			file.delete();
+			if(!temp.renameTo(file))
+				throw new IOException("Unable to write " + file);
+		}
+	}
+
+	@Override
+	public void add(String uri1, String uri2, Relation r)
+	{
+		throw new UnsupportedOperationException("The alignment is read-only");
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2)
+	{
+		int id1 = id(uri1);
+		int id2 = id(uri2);
+		if(id1 < 0 || id2 < 0)
+			return false;
+		int i = find(key(id1, id2));
+		return i > -1 && (id1 <= id2) == ((buffer.get(relations + i) & FLIPPED) == 0);
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2, Relation r)
+	{
+		int id1 = id(uri1);
+		int id2 = id(uri2);
+		if(id1 < 0 || id2 < 0)
+			return false;
+		int i = find(key(id1, id2));
+		if(i < 0)
+			return false;
+		byte m = (byte)(buffer.get(relations + i) & RELATIONS);
+		if(id1 > id2)
+			m = Relation.reverse(m);
+		else if(id1 == id2)
+			m |= Relation.reverse(m);
+		return (m & r.mask()) != 0;
+	}
+
+	@Override
+	public int[] evaluation(AbstractAlignment other)
+	{
+		//Evaluation matrix
+		int[] eval = new int[3];
+		//False Positives
+		eval[1] = other.size();
+		for(int i = 0; i < pairs; i++)
+		{
+			//Restore the orientation in which the entities were mapped
+			long p = buffer.getLong(pairTable + 8 * i);
+			String source = uri((int)(p >>> 32));
+			String target = uri((int)p);
+			byte m = buffer.get(relations + i);
+			byte rels = (byte)(m & RELATIONS);
+			if((m & FLIPPED) != 0)
+			{
+				String s = source;
+				source = target;
+				target = s;
+				rels = Relation.reverse(rels);
+			}
+			//If there is an unknown relation between the entities, we ignore the mapping
+			if((rels & Relation.UNKNOWN.mask()) != 0)
+			{
+				//And if it is in the other Alignment we discount
+				//it, so it doesn't count as a False Positive
+				if(other.contains(source, target))
+					eval[1]--;
+				continue;
+			}
+			//Otherwise, we check if the mapping with each relation is in the other Alignment
+			for(Relation r : Relation.values(rels))
+			{
+				//If so, it is a True Positive, otherwise a False Negative
+				if(other.contains(source, target, r))
+					eval[0]++;
+				else
+					eval[2]++;
+			}
+		}
+		eval[1] -= eval[0];
+		return eval;
+	}
+
+	@Override
+	public void forEachMapping(MappingVisitor v)
+	{
+		for(int i = 0; i < pairs; i++)
+		{
+			long p = buffer.getLong(pairTable + 8 * i);
+			String source = uri((int)(p >>> 32));
+			String target = uri((int)p);
+			byte m = buffer.get(relations + i);
+			byte rels = (byte)(m & RELATIONS);
+			if((m & FLIPPED) != 0)
+			{
+				String s = source;
+				source = target;
+				target = s;
+				rels = Relation.reverse(rels);
+			}
+			for(Relation r : VALUES)
+				if((rels & r.mask()) != 0)
+					v.visit(source, target, r);
+		}
+	}
+
+	@Override
+	public double getConfidence(String uri1, String uri2)
+	{
+		int id1 = id(uri1);
+		int id2 = id(uri2);
+		if(id1 < 0 || id2 < 0)
+			return -1;
+		int i = find(key(id1, id2));
+		if(i < 0)
+			return -1;
+		return buffer.getFloat(confidences + 4 * i);
+	}
+
+	@Override
+	public Set<String> getSources()
+	{
+		return Collections.unmodifiableSet(index().keySet());
+	}
+
+	@Override
+	public Set<String> getTargets(String source)
+	{
+		Set<String> targets = index().get(source);
+		if(targets == null)
+			return null;
+		return Collections.unmodifiableSet(targets);
+	}
+
+	@Override
+	public Vector<Relation> getRelations(String source, String target)
+	{
+		int id1 = id(source);
+		int id2 = id(target);
+		if(id1 < 0 || id2 < 0)
+			return null;
+		int i = find(key(id1, id2));
+		//A pair is only returned in the orientation in which it was mapped
+		//(and a self-mapping only with the relations it was mapped with)
+		if(i < 0 || (id1 <= id2) != ((buffer.get(relations + i) & FLIPPED) == 0))
+			return null;
+		byte m = (byte)(buffer.get(relations + i) & RELATIONS);
+		if(id1 > id2)
+			m = Relation.reverse(m);
+		Vector<Relation> rels = new Vector<Relation>();
+		for(Relation r : Relation.values(m))
+			rels.add(r);
+		return rels;
+	}
+
+	@Override
+	public void remove(String uri1, String uri2, Relation r)
+	{
+		throw new UnsupportedOperationException("The alignment is read-only");
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	//Finds the identifier of the URI by binary search on the
+	//string table, or returns -1 if it isn't in the Alignment
+	private int id(String uri)
+	{
+		byte[] b = uri.getBytes(UTF8);
+		int lo = 0;
+		int hi = entities - 1;
+		while(lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			int start = strings + buffer.getInt(offsets + 4 * mid);
+			int end = strings + buffer.getInt(offsets + 4 * mid + 4);
+			int n = Math.min(b.length, end - start);
+			int c = 0;
+			for(int i = 0; i < n && c == 0; i++)
+				c = (buffer.get(start + i) & 0xFF) - (b[i] & 0xFF);
+			if(c == 0)
+				c = (end - start) - b.length;
+			if(c < 0)
+				lo = mid + 1;
+			else if(c > 0)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	//Finds the position of the pair by binary search on the
+	//pair table, or returns -1 if it isn't in the Alignment
+	private int find(long key)
+	{
+		int lo = 0;
+		int hi = pairs - 1;
+		while(lo <= hi)
+		{
+			int mid = (lo + hi) >>> 1;
+			long p = buffer.getLong(pairTable + 8 * mid);
+			if(p < key)
+				lo = mid + 1;
+			else if(p > key)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	//Decodes the URI with the given identifier
+	private String uri(int id)
+	{
+		int start = strings + buffer.getInt(offsets + 4 * id);
+		int end = strings + buffer.getInt(offsets + 4 * id + 4);
+		byte[] b = new byte[end - start];
+		for(int i = 0; i < b.length; i++)
+			b[i] = buffer.get(start + i);
+		return new String(b, UTF8);
+	}
+
+	private HashMap<String,Set<String>> index()
+	{
+		if(index == null)
+		{
+			HashMap<String,Set<String>> map = new HashMap<String,Set<String>>();
+			for(int i = 0; i < pairs; i++)
+			{
+				long p = buffer.getLong(pairTable + 8 * i);
+				String source = uri((int)(p >>> 32));
+				String target = uri((int)p);
+				if((buffer.get(relations + i) & FLIPPED) != 0)
+				{
+					String s = source;
+					source = target;
+					target = s;
+				}
+				Set<String> targets = map.get(source);
+				if(targets == null)
+				{
+					targets = new HashSet<String>();
+					map.put(source, targets);
+				}
+				targets.add(target);
+			}
+			index = map;
+		}
+		return index;
+	}
+
+	//Aligns a position of the file to 8 bytes
+	private static int align(int position)
+	{
+		return (position + 7) & ~7;
+	}
+
+	private static long key(int id1, int id2)
+	{
+		if(id1 > id2)
+			return ((long)id2 << 32) | id1;
+		return ((long)id1 << 32) | id2;
+	}
+
+	private static byte mask(Vector<Relation> rels)
+	{
+		byte m = 0;
+		for(Relation r : rels)
+			m |= r.mask();
+		return m;
+	}
+}
@@ -0,0 +1,20 @@
+package eu.sealsproject.omt.client;
+
+/**
+ * A callback that receives each mapping of an Alignment, which allows the
+ * Alignment representations to be traversed directly over their internal
+ * structure (see AbstractAlignment.forEachMapping).
+ * 
+ * @author Daniel Faria
+ */
+
+public interface MappingVisitor
+{
+	/**
+	 * Receives a mapping of the Alignment being traversed
+	 * @param source: the URI of the source ontology entity
+	 * @param target: the URI of the target ontology entity
+	 * @param r: the mapping relation between the entities
+	 */
+	public void visit(String source, String target, Relation r);
+}
@@ -0,0 +1,97 @@
+package eu.sealsproject.omt.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URL;
+
+import eu.sealsproject.omt.client.interactive.Oracle;
+import eu.sealsproject.platform.res.domain.omt.IOntologyMatchingToolBridge;
+
+/**
+ * A matcher worker process, started by the WorkerPool of the Client.
+ * The worker loads the tool bridge once and then executes the matching
+ * tasks it receives on its standard input, one per line, replying to
+ * each on its standard output:
+ * - request: "ALIGN\t<source>\t<target>\t<input or ->\t<test case or ->" or "EXIT"
+ * (the test case is the one whose Oracle session the tool queries, through
+ * the Client's Oracle server, in interactive mode)
+ * - reply: "OK\t<alignment>", "NULL", "ERROR\t<message>" or "FATAL\t<message>"
+ * Everything the tool prints is redirected to the standard error.
+ * 
+ * @author Daniel Faria
+ */
+
+public class MatcherWorker
+{
+	public static void main(String[] args) throws IOException
+	{
+		//Keep the standard output for the protocol
+		PrintStream stdout = System.out;
+		System.setOut(System.err);
+		Writer out = new OutputStreamWriter(stdout, "UTF-8");
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+		
+		//Load the tool bridge
+		IOntologyMatchingToolBridge bridge;
+		try
+		{
+			bridge = Client.loadBridge(new File(args[0]));
+		}
+		catch(Exception e)
+		{
+			reply(out, "FAILED\t" + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		reply(out, "READY");
+		
+		//Execute the matching tasks
+		String line;
+		while((line = in.readLine()) != null && line.startsWith("ALIGN\t"))
+		{
+			String[] request = line.split("\t");
+			try
+			{
+				URL source = new URL(request[1]);
+				URL target = new URL(request[2]);
+				if(request.length > 4 && !request[4].equals("-"))
+					System.setProperty(Oracle.TASK_PROPERTY, request[4]);
+				else
+					System.clearProperty(Oracle.TASK_PROPERTY);
+				URL alignment;
+				if(request[3].equals("-"))
+					alignment = bridge.align(source, target);
+				else
+					alignment = bridge.align(source, target, new URL(request[3]));
+				if(alignment == null)
+					reply(out, "NULL");
+				else
+					reply(out, "OK\t" + alignment);
+			}
+			//The tool may have left the JVM in an unusable state, so the worker must be replaced
+			catch(OutOfMemoryError e)
+			{
+				reply(out, "FATAL\tOut of memory");
+				System.exit(3);
+			}
+			catch(Throwable e)
+			{
+				e.printStackTrace();
+				reply(out, "ERROR\t" + e);
+			}
+		}
+		System.exit(0);
+	}
+	
+	//Writes a single-line reply to the Client
+	private static void reply(Writer out, String message) throws IOException
+	{
+		out.write(message.replaceAll("[\r\n]+", " ") + "\n");
+		out.flush();
+	}
+}
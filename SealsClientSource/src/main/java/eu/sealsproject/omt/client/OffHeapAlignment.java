@@ -0,0 +1,355 @@
+package eu.sealsproject.omt.client;
+
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * An Alignment representation for multi-million-mapping Alignments that
+ * keeps its data outside of the Java heap, so that the heap usage (and the
+ * garbage collection pauses) don't grow with the size of the Alignment.
+ * Like the CompactAlignment, entity URIs are encoded as ints and each pair of
+ * mapped entities is stored as a single long in an open-addressing hash set,
+ * together with the bits of its relations:
+ * [source id: 30 bits][target id: 30 bits][relations: 4 bits]
+ * but the URIs, the hash set and the confidences are all in buffers mapped
+ * from temporary files (see OffHeapBuffers), which aren't limited by the
+ * maximum heap or direct memory size. The off-heap memory is released when
+ * the Alignment is garbage collected.
+ * Traversing the Alignment with forEachMapping doesn't use the heap, whereas
+ * getSources and getTargets build an index of the Alignment in the heap.
+ *
+ * @author Daniel Faria
+ */
+
+public class OffHeapAlignment extends AbstractAlignment
+{
+	private static final int MAX_ID = (1 << 30) - 1;
+	private static final long MASK = 0xFL;
+	private static final Relation[] RELATIONS = Relation.values();
+	private OffHeapDictionary dictionary;
+	//Open-addressing (linear probing) hash set of mapped pairs (0 for empty slots)
+	private LongBuffer table;
+	//Confidences of the pairs (in the same slots as the pairs)
+	private FloatBuffer confidences;
+	private int pairs;
+	private int size;
+	//Source to targets index, built only if getSources or getTargets are called
+	private HashMap<String,Set<String>> index;
+
+	/**
+	 * Constructs a new empty OffHeapAlignment
+	 */
+	public OffHeapAlignment()
+	{
+		dictionary = new OffHeapDictionary();
+		table = longs(64);
+		confidences = floats(64);
+		pairs = 0;
+		size = 0;
+	}
+
+	@Override
+	public void add(String uri1, String uri2, Relation r)
+	{
+		add(uri1, uri2, r, 1.0);
+	}
+
+	/**
+	 * Adds a mapping with the given confidence to the Alignment if it is new;
+	 * the confidence of a pair of entities with more than one relation is the
+	 * highest confidence of its mappings
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param r: the mapping relation between the entities
+	 * @param confidence: the confidence of the mapping
+	 */
+	@Override
+	public void add(String uri1, String uri2, Relation r, double confidence)
+	{
+		//If the mapping already exists in the Alignment, return
+		if(this.contains(uri1, uri2, r))
+			return;
+		size++;
+		index = null;
+		int id1 = dictionary.intern(uri1);
+		int id2 = dictionary.intern(uri2);
+		if(id1 > MAX_ID || id2 > MAX_ID)
+			throw new IllegalStateException("Too many entities for an OffHeapAlignment");
+		//If the entities are already mapped, add the new relation
+		int slot = find(id1, id2);
+		if(slot > -1)
+			table.put(slot, table.get(slot) | r.mask());
+		else if((slot = find(id2, id1)) > -1)
+			table.put(slot, table.get(slot) | r.reverse().mask());
+		//Otherwise add a new pair
+		else
+		{
+			insert(((long)id1 << 34) | ((long)id2 << 4) | r.mask(), (float)confidence);
+			return;
+		}
+		confidences.put(slot, Math.max(confidences.get(slot), (float)confidence));
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		return id1 > -1 && id2 > -1 && find(id1, id2) > -1;
+	}
+
+	@Override
+	public boolean contains(String uri1, String uri2, Relation r)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		return id1 > -1 && id2 > -1 && contains(id1, id2, r);
+	}
+
+	@Override
+	public int[] evaluation(AbstractAlignment other)
+	{
+		//Evaluation matrix
+		int[] eval = new int[3];
+		//False Positives
+		eval[1] = other.size();
+		for(int i = 0; i < table.capacity(); i++)
+		{
+			long e = table.get(i);
+			if(e == 0)
+				continue;
+			String source = dictionary.get((int)(e >>> 34));
+			String target = dictionary.get((int)(e >>> 4) & MAX_ID);
+			//If there is an unknown relation between the entities, we ignore the mapping
+			if((e & Relation.UNKNOWN.mask()) != 0)
+			{
+				//And if it is in the other Alignment we discount
+				//it, so it doesn't count as a False Positive
+				if(other.contains(source, target))
+					eval[1]--;
+				continue;
+			}
+			//Otherwise, we check if the mapping with each relation is in the other Alignment
+			for(Relation r : RELATIONS)
+			{
+				if((e & r.mask()) == 0)
+					continue;
+				//If so, it is a True Positive, otherwise a False Negative
+				if(other.contains(source, target, r))
+					eval[0]++;
+				else
+					eval[2]++;
+			}
+		}
+		eval[1] -= eval[0];
+		return eval;
+	}
+
+	@Override
+	public void forEachMapping(MappingVisitor v)
+	{
+		for(int i = 0; i < table.capacity(); i++)
+		{
+			long e = table.get(i);
+			if(e == 0)
+				continue;
+			String source = dictionary.get((int)(e >>> 34));
+			String target = dictionary.get((int)(e >>> 4) & MAX_ID);
+			for(Relation r : RELATIONS)
+				if((e & r.mask()) != 0)
+					v.visit(source, target, r);
+		}
+	}
+
+	@Override
+	public double getConfidence(String uri1, String uri2)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		if(id1 < 0 || id2 < 0)
+			return -1;
+		int slot = find(id1, id2);
+		if(slot < 0 && (slot = find(id2, id1)) < 0)
+			return -1;
+		return confidences.get(slot);
+	}
+
+	@Override
+	public Set<String> getSources()
+	{
+		return index().keySet();
+	}
+
+	@Override
+	public Set<String> getTargets(String source)
+	{
+		return index().get(source);
+	}
+
+	@Override
+	public Vector<Relation> getRelations(String source, String target)
+	{
+		int id1 = dictionary.lookup(source);
+		int id2 = dictionary.lookup(target);
+		int slot = id1 > -1 && id2 > -1 ? find(id1, id2) : -1;
+		if(slot < 0)
+			return null;
+		Vector<Relation> rels = new Vector<Relation>();
+		for(Relation r : Relation.values((byte)(table.get(slot) & MASK)))
+			rels.add(r);
+		return rels;
+	}
+
+	@Override
+	public void remove(String uri1, String uri2, Relation r)
+	{
+		int id1 = dictionary.lookup(uri1);
+		int id2 = dictionary.lookup(uri2);
+		if(id1 < 0 || id2 < 0)
+			return;
+		int slot = find(id1, id2);
+		long b = r.mask();
+		if(slot < 0 || (table.get(slot) & b) == 0)
+		{
+			slot = find(id2, id1);
+			b = r.reverse().mask();
+			if(slot < 0 || (table.get(slot) & b) == 0)
+				return;
+		}
+		size--;
+		index = null;
+		long e = table.get(slot) & ~b;
+		table.put(slot, e);
+		if((e & MASK) == 0)
+			delete(slot);
+	}
+
+	@Override
+	public int size()
+	{
+		return size;
+	}
+
+	//Checks if the mapping between two entity identifiers (or its reverse) is in the Alignment
+	private boolean contains(int id1, int id2, Relation r)
+	{
+		int slot = find(id1, id2);
+		if(slot > -1 && (table.get(slot) & r.mask()) != 0)
+			return true;
+		slot = find(id2, id1);
+		return slot > -1 && (Relation.reverse((byte)(table.get(slot) & MASK)) & r.mask()) != 0;
+	}
+
+	//Finds the slot of the pair of entity identifiers, or returns -1 if it isn't in the Alignment
+	private int find(int id1, int id2)
+	{
+		long pair = ((long)id1 << 30) | id2;
+		int mask = table.capacity() - 1;
+		int i = hash(pair) & mask;
+		long e;
+		while((e = table.get(i)) != 0)
+		{
+			if(e >>> 4 == pair)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+
+	//Inserts a new pair into the hash set
+	private void insert(long e, float confidence)
+	{
+		//Keep the load factor at most 0.5
+		if(++pairs * 2 > table.capacity())
+		{
+			if(table.capacity() > Integer.MAX_VALUE / 16)
+				throw new IllegalStateException("Too many mappings for an OffHeapAlignment");
+			LongBuffer old = table;
+			FloatBuffer oldConfidences = confidences;
+			table = longs(old.capacity() * 2);
+			confidences = floats(old.capacity() * 2);
+			for(int i = 0; i < old.capacity(); i++)
+				if(old.get(i) != 0)
+					put(old.get(i), oldConfidences.get(i));
+		}
+		put(e, confidence);
+	}
+
+	private void put(long e, float confidence)
+	{
+		int mask = table.capacity() - 1;
+		int i = hash(e >>> 4) & mask;
+		while(table.get(i) != 0)
+			i = (i + 1) & mask;
+		table.put(i, e);
+		confidences.put(i, confidence);
+	}
+
+	//Deletes the pair in the given slot, shifting back the pairs that
+	//follow it so that no lookup chain is broken
+	private void delete(int i)
+	{
+		pairs--;
+		int mask = table.capacity() - 1;
+		int j = i;
+		while(true)
+		{
+			j = (j + 1) & mask;
+			long e = table.get(j);
+			if(e == 0)
+				break;
+			int k = hash(e >>> 4) & mask;
+			//Leave the pair in place if its home slot is cyclically within (i,j]
+			if(i <= j ? (i < k && k <= j) : (i < k || k <= j))
+				continue;
+			table.put(i, e);
+			confidences.put(i, confidences.get(j));
+			i = j;
+		}
+		table.put(i, 0);
+	}
+
+	private HashMap<String,Set<String>> index()
+	{
+		if(index == null)
+		{
+			HashMap<String,Set<String>> map = new HashMap<String,Set<String>>();
+			for(int i = 0; i < table.capacity(); i++)
+			{
+				long e = table.get(i);
+				if(e == 0)
+					continue;
+				String source = dictionary.get((int)(e >>> 34));
+				Set<String> targets = map.get(source);
+				if(targets == null)
+				{
+					targets = new HashSet<String>();
+					map.put(source, targets);
+				}
+				targets.add(dictionary.get((int)(e >>> 4) & MAX_ID));
+			}
+			index = map;
+		}
+		return index;
+	}
+
+	private static LongBuffer longs(int capacity)
+	{
+		return OffHeapBuffers.allocate(capacity * 8).asLongBuffer();
+	}
+
+	private static FloatBuffer floats(int capacity)
+	{
+		return OffHeapBuffers.allocate(capacity * 4).asFloatBuffer();
+	}
+
+	private static int hash(long pair)
+	{
+		pair *= 0x9E3779B97F4A7C15L;
+		return (int)(pair ^ (pair >>> 32));
+	}
+}
@@ -0,0 +1,102 @@
+package eu.sealsproject.omt.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Allocates the buffers of the off-heap Alignments (OffHeapAlignment and
+ * OffHeapDictionary). The buffers are mapped from temporary files rather than
+ * allocated as direct buffers, since the JVM limits direct buffers to
+ * -XX:MaxDirectMemorySize (which is the maximum heap size by default) but not
+ * mapped files. Since most buffers are small (every Alignment starts with a
+ * few and doubles them as it grows), they are sliced from shared chunks of
+ * CHUNK bytes, so that a file and a mapping are created per chunk rather than
+ * per buffer; only buffers larger than LARGE bytes are mapped from a file of
+ * their own. Each file is deleted as soon as it is mapped, so it only lasts
+ * as long as its mapping, which is unmapped when it (and, for a chunk, every
+ * buffer sliced from it) is garbage collected; until then, the operating
+ * system can page the buffers out to their file. The space of the buffers
+ * that are discarded as the Alignments grow isn't reused, but it is at most
+ * that of the buffers that replaced them. The files are created in the folder
+ * given by the "seals.offheap.dir" system property, or in the temporary folder.
+ *
+ * @author Daniel Faria
+ */
+
+class OffHeapBuffers
+{
+	static final String FOLDER_PROPERTY = "seals.offheap.dir";
+	//The size of the shared chunks, and of the largest buffer sliced from them
+	static final int CHUNK = 64 << 20;
+	static final int LARGE = CHUNK / 8;
+	//The chunk being sliced, and the position of its free space
+	private static ByteBuffer chunk = null;
+	private static int position = 0;
+
+	/**
+	 * Allocates a zeroed buffer in the native byte order
+	 * @param bytes: the size of the buffer
+	 * @return the buffer
+	 * @throws IllegalStateException if the buffer can't be mapped
+	 */
+	static ByteBuffer allocate(int bytes)
+	{
+		ByteBuffer b = bytes > LARGE ? map(bytes) : slice(bytes);
+		return b.order(ByteOrder.nativeOrder());
+	}
+
+	//Slices a buffer from the current chunk, mapping a new chunk if it is full
+	//(the buffers are aligned to 8 bytes, and never overlap, so they stay zeroed)
+	private static synchronized ByteBuffer slice(int bytes)
+	{
+		if(chunk == null || position + bytes > CHUNK)
+		{
+			chunk = map(CHUNK);
+			position = 0;
+		}
+		ByteBuffer b = chunk.duplicate();
+		b.position(position);
+		b.limit(position + bytes);
+		position = (position + bytes + 7) & ~7;
+		return b.slice();
+	}
+
+	//Maps a zeroed buffer from a new temporary file
+	private static ByteBuffer map(int bytes)
+	{
+		String folder = System.getProperty(FOLDER_PROPERTY);
+		File f = null;
+		try
+		{
+			f = File.createTempFile(".offheap-", ".tmp", folder == null ? null : new File(folder));
+			RandomAccessFile raf = new RandomAccessFile(f, "rw");
+			try
+			{
+				//The file is extended with zeros (without writing them, if the
+				//file system supports sparse files)
+				raf.setLength(bytes);
+				return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+		catch(IOException e)
+		{
+			throw new IllegalStateException("Unable to map " + bytes + " bytes of off-heap memory" +
+					(f == null ? "" : " in " + f.getAbsolutePath()) + ": " + e.getMessage(), e);
+		}
+		finally
+		{
+			//The mapping keeps the file (on systems that can't delete
+			//mapped files, it is deleted at exit)
+			if(f != null && !f.delete())
+				f.deleteOnExit();
+		}
+	}
+}
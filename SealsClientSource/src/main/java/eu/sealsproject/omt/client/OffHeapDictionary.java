@@ -0,0 +1,168 @@
+package eu.sealsproject.omt.client;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A dictionary that encodes entity URIs as consecutive int identifiers,
+ * like the UriDictionary, but keeps the URIs (in UTF-8) and its hash table
+ * in buffers outside of the Java heap (see OffHeapBuffers). Like the Alignments, the
+ * dictionary is not synchronized.
+ *
+ * @author Daniel Faria
+ */
+
+class OffHeapDictionary
+{
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	//The URIs in UTF-8, one after the other
+	private ByteBuffer data;
+	//The position of each URI in the data (and the end of the last URI)
+	private IntBuffer offsets;
+	//The hash code of each URI (to rehash without decoding them)
+	private IntBuffer hashes;
+	private int size;
+	//Open-addressing hash table of identifiers + 1 (0 for empty slots)
+	private IntBuffer table;
+
+	/**
+	 * Constructs a new empty OffHeapDictionary
+	 */
+	OffHeapDictionary()
+	{
+		data = OffHeapBuffers.allocate(4096);
+		offsets = ints(65);
+		hashes = ints(64);
+		table = ints(128);
+		size = 0;
+	}
+
+	/**
+	 * @param id: the identifier to retrieve
+	 * @return the URI with the given identifier
+	 */
+	String get(int id)
+	{
+		int start = offsets.get(id);
+		byte[] b = new byte[offsets.get(id + 1) - start];
+		ByteBuffer d = data.duplicate();
+		d.position(start);
+		d.get(b);
+		return new String(b, UTF8);
+	}
+
+	/**
+	 * Gets the identifier of a URI, adding the URI to the dictionary if necessary
+	 * @param uri: the URI to encode
+	 * @return the identifier of the URI
+	 */
+	int intern(String uri)
+	{
+		byte[] b = uri.getBytes(UTF8);
+		int h = UriDictionary.mix(uri.hashCode());
+		int slot = slot(b, h);
+		if(table.get(slot) != 0)
+			return table.get(slot) - 1;
+		int start = offsets.get(size);
+		if(start + b.length > data.capacity())
+		{
+			long capacity = Math.max(2L * data.capacity(), (long)start + b.length);
+			if(capacity > Integer.MAX_VALUE)
+				throw new IllegalStateException("Too many entities for an OffHeapDictionary");
+			ByteBuffer d = OffHeapBuffers.allocate((int)capacity);
+			ByteBuffer old = data.duplicate();
+			old.position(0);
+			old.limit(start);
+			d.put(old);
+			data = d;
+		}
+		ByteBuffer d = data.duplicate();
+		d.position(start);
+		d.put(b);
+		if(size + 1 == hashes.capacity())
+		{
+			hashes = grow(hashes, size + 1);
+			offsets = grow(offsets, size + 2);
+		}
+		hashes.put(size, h);
+		offsets.put(size + 1, start + b.length);
+		table.put(slot, ++size);
+		//Keep the load factor at most 0.5
+		if(size * 2 > table.capacity())
+			rehash();
+		return size - 1;
+	}
+
+	/**
+	 * @param uri: the URI to look up
+	 * @return the identifier of the URI, or -1 if it is not in the dictionary
+	 */
+	int lookup(String uri)
+	{
+		return table.get(slot(uri.getBytes(UTF8), UriDictionary.mix(uri.hashCode()))) - 1;
+	}
+
+	/**
+	 * @return the number of URIs in the dictionary
+	 */
+	int size()
+	{
+		return size;
+	}
+
+	//Finds the slot of the table containing the given URI, or the
+	//empty slot where it should be added
+	private int slot(byte[] uri, int h)
+	{
+		int mask = table.capacity() - 1;
+		int i = h & mask;
+		while(table.get(i) != 0 && !equals(table.get(i) - 1, uri, h))
+			i = (i + 1) & mask;
+		return i;
+	}
+
+	//Checks if the URI with the given identifier is the given URI
+	private boolean equals(int id, byte[] uri, int h)
+	{
+		if(hashes.get(id) != h)
+			return false;
+		int start = offsets.get(id);
+		if(offsets.get(id + 1) - start != uri.length)
+			return false;
+		for(int i = 0; i < uri.length; i++)
+			if(data.get(start + i) != uri[i])
+				return false;
+		return true;
+	}
+
+	private void rehash()
+	{
+		IntBuffer t = ints(table.capacity() * 2);
+		int mask = t.capacity() - 1;
+		for(int id = 0; id < size; id++)
+		{
+			int i = hashes.get(id) & mask;
+			while(t.get(i) != 0)
+				i = (i + 1) & mask;
+			t.put(i, id + 1);
+		}
+		table = t;
+	}
+
+	//Copies the first n ints of the buffer to a new buffer of twice the capacity
+	private static IntBuffer grow(IntBuffer b, int n)
+	{
+		IntBuffer g = ints(b.capacity() * 2);
+		IntBuffer old = b.duplicate();
+		old.position(0);
+		old.limit(n);
+		g.put(old);
+		return g;
+	}
+
+	private static IntBuffer ints(int capacity)
+	{
+		return OffHeapBuffers.allocate(capacity * 4).asIntBuffer();
+	}
+}
@@ -1,7 +1,10 @@
 package eu.sealsproject.omt.client;
 
+import java.util.HashMap;
+
 /**
  * A Mapping Relation between two Ontology entities.
+ * Sets of Relations are represented as bit masks, with one bit per Relation.
  * 
  * @author Daniel Faria, Dominique Ritze
  */
@@ -13,11 +16,41 @@ public enum Relation
     SUBSUMED_BY ("<"),
     UNKNOWN ("?");
     
+    private static final Relation[] VALUES = Relation.values();
+    //The Relations by label, and by the other names the Alignment API accepts
+    //for them (in lower case)
+    private static final HashMap<String,Relation> LABELS = new HashMap<String,Relation>();
+    //The reverse of each set of Relations (indexed by mask)
+    private static final byte[] REVERSE = new byte[1 << VALUES.length];
+    static
+    {
+    	for(Relation r : VALUES)
+    	{
+    		LABELS.put(r.label, r);
+    		LABELS.put(r.name().toLowerCase(), r);
+    	}
+    	for(String l : new String[]{"equivalent", "equiv", "equals", "equivrelation",
+    			"fr.inrialpes.exmo.align.impl.rel.equivrelation"})
+    		LABELS.put(l, EQUIVALENCE);
+    	for(String l : new String[]{"subsume", "&gt;", "subsumerelation",
+    			"fr.inrialpes.exmo.align.impl.rel.subsumerelation"})
+    		LABELS.put(l, SUBSUMES);
+    	for(String l : new String[]{"subsumed", "subsumedby", "issubsumedby", "&lt;", "subsumedrelation",
+    			"fr.inrialpes.exmo.align.impl.rel.subsumedrelation"})
+    		LABELS.put(l, SUBSUMED_BY);
+    	for(int m = 0; m < REVERSE.length; m++)
+    		for(Relation r : VALUES)
+    			if((m & r.mask) != 0)
+    				REVERSE[m] |= r.reverse().mask;
+    }
+    
     private String label;
+    private byte mask;
     
     private Relation(String l)
     {
     	label = l;
+    	mask = (byte)(1 << ordinal());
     }
     
     public Relation reverse()
@@ -32,16 +65,53 @@ public enum Relation
     	}
     }
     
+    /**
+     * @return the bit of this Relation in a Relation mask
+     */
+    public byte mask()
+    {
+    	return mask;
+    }
+    
+    /**
+     * @param mask: a set of Relations
+     * @return the set with the reverse of each Relation in the given set
+     */
+    public static byte reverse(byte mask)
+    {
+    	return REVERSE[mask & (REVERSE.length - 1)];
+    }
+    
+    /**
+     * @param mask: a set of Relations
+     * @return the Relations in the given set
+     */
+    public static Relation[] values(byte mask)
+    {
+    	Relation[] rels = new Relation[Integer.bitCount(mask & (REVERSE.length - 1))];
+    	int i = 0;
+    	for(Relation r : VALUES)
+    		if((mask & r.mask) != 0)
+    			rels[i++] = r;
+    	return rels;
+    }
+    
+    /**
+     * @param l: the label of a Relation, or one of its names (in any case)
+     * @return the Relation, or null if the label is unknown
+     */
     public static Relation parse(String l)
     {
-    	for(Relation r : Relation.values())
-    		if(l.equals(r.label))
-    			return r;
-   		return null;
+    	if(l == null)
+    		return null;
+    	Relation r = LABELS.get(l);
+    	if(r == null)
+    		r = LABELS.get(l.trim().toLowerCase());
+    	return r;
     }
     
     public String toString()
     {
     	return label;
     }
-}
\ No newline at end of file
+}
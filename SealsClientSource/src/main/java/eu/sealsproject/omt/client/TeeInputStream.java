@@ -0,0 +1,85 @@
+package eu.sealsproject.omt.client;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An InputStream that copies every byte it reads to an OutputStream,
+ * so that a stream can be saved while it is consumed.
+ * 
+ * @author Daniel Faria
+ */
+
+public class TeeInputStream extends FilterInputStream
+{
+	private OutputStream copy;
+	
+	/**
+	 * Constructs a new TeeInputStream
+	 * @param in: the stream to read from
+	 * @param copy: the stream to which to copy the bytes read
+	 */
+	public TeeInputStream(InputStream in, OutputStream copy)
+	{
+		super(in);
+		this.copy = copy;
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		int b = in.read();
+		if(b != -1)
+			copy.write(b);
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		int n = in.read(b, off, len);
+		if(n > 0)
+			copy.write(b, off, n);
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException
+	{
+		//Skipped bytes must be copied as well
+		byte[] buffer = new byte[(int)Math.min(n, 65536)];
+		int read = read(buffer, 0, buffer.length);
+		return Math.max(read, 0);
+	}
+	
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+	
+	/**
+	 * Reads (and copies) the remainder of the stream
+	 * @throws IOException if the stream can't be read or copied
+	 */
+	public void drain() throws IOException
+	{
+		byte[] buffer = new byte[65536];
+		while(read(buffer, 0, buffer.length) != -1);
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			in.close();
+		}
+		finally
+		{
+			copy.close();
+		}
+	}
+}
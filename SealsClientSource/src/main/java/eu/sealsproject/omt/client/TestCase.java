@@ -0,0 +1,68 @@
+package eu.sealsproject.omt.client;
+
+import java.net.URL;
+
+import eu.sealsproject.omt.client.interactive.OracleSession;
+
+/**
+ * The state of a single matching task: its input data items, the output
+ * alignment produced by the tool and the evaluation of that alignment.
+ * Each task runs on its own TestCase, so that several tasks can be run
+ * concurrently.
+ *
+ * @author Daniel Faria
+ */
+
+public class TestCase
+{
+	//Test case identifier (null outside of suite mode)
+	final String id;
+	//Input data items
+	URL source = null;
+	URL target = null;
+	URL reference = null;
+	URL input = null;
+	//Repository URL of the reference alignment, which identifies it across runs
+	//(the reference above may be a cached copy), or null if it is the same
+	URL referenceOrigin = null;
+	//Output alignment (and the hash of its contents)
+	URL alignment = null;
+	String hash = null;
+	//Reference Alignments (normal and oracle)
+	AbstractAlignment refAlign = null;
+	AbstractAlignment oracleAlign = null;
+	//Oracle session of the task (interactive mode)
+	OracleSession oracle = null;
+	//URI dictionary shared by the compact Alignments of the test case
+	UriDictionary dictionary = null;
+	//Time spent retrieving the data items (-1 if they weren't retrieved)
+	long prefetchTime = -1;
+	//Run time of the matching task (-1 if the task wasn't run)
+	long runTime = -1;
+	//Classification of the output alignment (null if it wasn't evaluated)
+	int[] classification = null;
+	int[] oracleClassification = null;
+	//Confidence threshold of the output alignment with the highest F-measure
+	//and the F-measure at that threshold (-1 if they weren't computed)
+	double bestThreshold = -1;
+	double bestF = -1;
+	//Notes on the outcome of the task
+	String note = null;
+
+	/**
+	 * Constructs a new TestCase with the given identifier
+	 * @param id: the identifier of the test case
+	 */
+	public TestCase(String id)
+	{
+		this.id = id;
+	}
+
+	/**
+	 * @return the identifier of the test case
+	 */
+	public String getId()
+	{
+		return id;
+	}
+}
@@ -0,0 +1,217 @@
+package eu.sealsproject.omt.client;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Vector;
+
+/**
+ * The evaluation of an Alignment against a reference at each distinct
+ * confidence threshold of the Alignment (i.e., of the subset of its mappings
+ * with confidence greater than or equal to the threshold).
+ * The mapped pairs of the Alignment are classified once and sorted by
+ * confidence, and the classification at each threshold is then accumulated
+ * in a single pass, in decreasing order of threshold. The classification at
+ * the lowest threshold is that of AbstractAlignment.evaluation.
+ *
+ * @author Daniel Faria
+ */
+
+public class ThresholdCurve
+{
+	//Distinct thresholds, in decreasing order
+	private double[] thresholds;
+	//Classification at each threshold: {True Positives, False Positives, False Negatives}
+	private int[][] classifications;
+
+	/**
+	 * Evaluates an Alignment against a reference at each distinct threshold
+	 * @param reference: the reference Alignment
+	 * @param other: the Alignment to evaluate
+	 */
+	public ThresholdCurve(final AbstractAlignment reference, AbstractAlignment other)
+	{
+		//Classify each mapped pair of the other Alignment: its number of mappings,
+		//of True Positives and whether it is discounted as an unknown
+		Pairs pairs = new Pairs(reference, other);
+		other.forEachMapping(pairs);
+		pairs.end();
+		long[] order = Arrays.copyOf(pairs.order, pairs.size);
+		int[] counts = pairs.counts;
+		Arrays.sort(order);
+		//The number of mappings in the reference that can be found (i.e.,
+		//that aren't between entities with an unknown relation)
+		final int[] count = new int[1];
+		reference.forEachMapping(new MappingVisitor()
+		{
+			@Override
+			public void visit(String source, String target, Relation r)
+			{
+				if(!reference.contains(source, target, Relation.UNKNOWN))
+					count[0]++;
+			}
+		});
+		int positives = count[0];
+		//Accumulate the classification in decreasing order of confidence
+		Vector<double[]> points = new Vector<double[]>();
+		int mappings = 0;
+		int tp = 0;
+		int discounted = 0;
+		for(int i = order.length - 1; i >= 0; i--)
+		{
+			int c = counts[(int)order[i]];
+			mappings += c >>> 16;
+			tp += (c >>> 8) & 0xFF;
+			discounted += c & 0xFF;
+			//Add a point once all the pairs with the same confidence are in
+			int bits = (int)(order[i] >>> 32);
+			if(i == 0 || (int)(order[i-1] >>> 32) != bits)
+				points.add(new double[]{Float.intBitsToFloat(bits), tp, mappings - tp - discounted, positives - tp});
+		}
+		thresholds = new double[points.size()];
+		classifications = new int[points.size()][3];
+		for(int i = 0; i < points.size(); i++)
+		{
+			double[] point = points.get(i);
+			thresholds[i] = point[0];
+			for(int j = 0; j < 3; j++)
+				classifications[i][j] = (int)point[j+1];
+		}
+	}
+
+	/**
+	 * @return the index of the threshold with the highest F-measure (the
+	 * highest threshold in case of a tie), or -1 if there are no thresholds
+	 */
+	public int best()
+	{
+		int best = -1;
+		double bestF = -1;
+		for(int i = 0; i < thresholds.length; i++)
+		{
+			int[] c = classifications[i];
+			double f = c[0] == 0 ? 0 : 2.0 * c[0] / (2 * c[0] + c[1] + c[2]);
+			if(f > bestF)
+			{
+				best = i;
+				bestF = f;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param i: the index of the threshold
+	 * @return the classification at the threshold: {True Positives,
+	 * False Positives, False Negatives}
+	 */
+	public int[] getClassification(int i)
+	{
+		return classifications[i];
+	}
+
+	/**
+	 * @param i: the index of the threshold
+	 * @return the threshold (the thresholds are in decreasing order)
+	 */
+	public double getThreshold(int i)
+	{
+		return thresholds[i];
+	}
+
+	/**
+	 * @return the number of distinct thresholds
+	 */
+	public int size()
+	{
+		return thresholds.length;
+	}
+
+	/**
+	 * Writes the curve to a tab-separated file, with one line per threshold
+	 * @param file: the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void write(File file) throws IOException
+	{
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try
+		{
+			writer.append("Threshold\tTrue Positives\tFalse Positives\tFalse Negatives\tPrecision\tRecall\tF-measure\n");
+			for(int i = 0; i < thresholds.length; i++)
+			{
+				int[] c = classifications[i];
+				double[] evaluation = Client.evaluationParameters(c);
+				writer.append(thresholds[i] + "\t" + c[0] + "\t" + c[1] + "\t" + c[2] + "\t" +
+						evaluation[0] + "\t" + evaluation[1] + "\t" + evaluation[2] + "\n");
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	//Classifies the mapped pairs of an Alignment as its mappings are visited
+	//(the mappings of each pair are visited one after the other)
+	private static class Pairs implements MappingVisitor
+	{
+		private AbstractAlignment reference;
+		private AbstractAlignment other;
+		//The pair being visited
+		private String source;
+		private String target;
+		private int rels;
+		private int tp;
+		private boolean unknown;
+		//Classification of each pair, and its confidence and position
+		private int[] counts = new int[64];
+		private long[] order = new long[64];
+		private int size = 0;
+
+		Pairs(AbstractAlignment reference, AbstractAlignment other)
+		{
+			this.reference = reference;
+			this.other = other;
+		}
+
+		@Override
+		public void visit(String s, String t, Relation r)
+		{
+			if(!s.equals(source) || !t.equals(target))
+			{
+				end();
+				source = s;
+				target = t;
+				unknown = reference.contains(s, t, Relation.UNKNOWN);
+			}
+			rels++;
+			if(!unknown && reference.contains(s, t, r))
+				tp++;
+		}
+
+		//Classifies the pair being visited, if any
+		void end()
+		{
+			if(rels == 0)
+				return;
+			if(size == counts.length)
+			{
+				counts = Arrays.copyOf(counts, 2 * size);
+				order = Arrays.copyOf(order, 2 * size);
+			}
+			//Unknowns are discounted if they are mapped in the same direction
+			//as in the reference (as in the evaluation)
+			int discounted = unknown && reference.contains(source, target) ? 1 : 0;
+			counts[size] = (rels << 16) | (tp << 8) | discounted;
+			//Sort by confidence, keeping the position of the pair
+			float c = (float)Math.max(0.0, other.getConfidence(source, target));
+			order[size] = ((long)Float.floatToIntBits(c) << 32) | size;
+			size++;
+			rels = 0;
+			tp = 0;
+		}
+	}
+}
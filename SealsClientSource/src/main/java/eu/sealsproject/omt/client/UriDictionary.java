@@ -0,0 +1,113 @@
+package eu.sealsproject.omt.client;
+
+/**
+ * A dictionary that encodes entity URIs as consecutive int identifiers,
+ * so that Alignments sharing it can store and compare mappings as pairs
+ * of ints rather than of Strings. Like the Alignments, the dictionary is
+ * not synchronized: it can be read concurrently, but not while URIs are
+ * being added.
+ * 
+ * @author Daniel Faria
+ */
+
+public class UriDictionary
+{
+	//The URIs by identifier
+	private String[] uris;
+	private int size;
+	//Open-addressing hash table of identifiers + 1 (0 for empty slots)
+	private int[] table;
+	
+	/**
+	 * Constructs a new empty UriDictionary
+	 */
+	public UriDictionary()
+	{
+		uris = new String[64];
+		table = new int[128];
+		size = 0;
+	}
+	
+	/**
+	 * @param id: the identifier to retrieve
+	 * @return the URI with the given identifier
+	 */
+	public String get(int id)
+	{
+		return uris[id];
+	}
+	
+	/**
+	 * Gets the identifier of a URI, adding the URI to the dictionary if necessary
+	 * @param uri: the URI to encode
+	 * @return the identifier of the URI
+	 */
+	public int intern(String uri)
+	{
+		int slot = slot(uri);
+		if(table[slot] != 0)
+			return table[slot] - 1;
+		if(size == uris.length)
+		{
+			String[] u = new String[size * 2];
+			System.arraycopy(uris, 0, u, 0, size);
+			uris = u;
+		}
+		uris[size] = uri;
+		table[slot] = ++size;
+		//Keep the load factor at most 0.5
+		if(size * 2 > table.length)
+			rehash();
+		return size - 1;
+	}
+	
+	/**
+	 * @param uri: the URI to look up
+	 * @return the identifier of the URI, or -1 if it is not in the dictionary
+	 */
+	public int lookup(String uri)
+	{
+		return table[slot(uri)] - 1;
+	}
+	
+	/**
+	 * @return the number of URIs in the dictionary
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	//Finds the slot of the table containing the given URI, or the
+	//empty slot where it should be added
+	private int slot(String uri)
+	{
+		int mask = table.length - 1;
+		int i = mix(uri.hashCode()) & mask;
+		while(table[i] != 0 && !uris[table[i] - 1].equals(uri))
+			i = (i + 1) & mask;
+		return i;
+	}
+	
+	private void rehash()
+	{
+		int[] t = new int[table.length * 2];
+		int mask = t.length - 1;
+		for(int id = 0; id < size; id++)
+		{
+			int i = mix(uris[id].hashCode()) & mask;
+			while(t[i] != 0)
+				i = (i + 1) & mask;
+			t[i] = id + 1;
+		}
+		table = t;
+	}
+	
+	//Spreads the bits of String hash codes, which are poor in the low bits
+	//for URIs that share long prefixes
+	static int mix(int h)
+	{
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
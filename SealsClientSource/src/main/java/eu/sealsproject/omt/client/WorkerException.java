@@ -0,0 +1,23 @@
+package eu.sealsproject.omt.client;
+
+/**
+ * Signals that a matching task could not be executed by a matcher
+ * worker process, either because the tool failed or because the
+ * worker itself crashed.
+ * 
+ * @author Daniel Faria
+ */
+
+public class WorkerException extends Exception
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a new WorkerException with the given message
+	 * @param message: the detail message
+	 */
+	public WorkerException(String message)
+	{
+		super(message);
+	}
+}
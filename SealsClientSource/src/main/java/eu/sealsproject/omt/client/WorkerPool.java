@@ -0,0 +1,270 @@
+package eu.sealsproject.omt.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.sealsproject.omt.client.interactive.Oracle;
+
+/**
+ * A pool of pre-warmed matcher worker processes, each of which loads the
+ * tool bridge once and then executes matching tasks on demand. A worker
+ * that crashes (or runs out of memory) is replaced by a new one, so that
+ * a single failing task doesn't take the whole test suite with it.
+ * 
+ * @author Daniel Faria
+ */
+
+public class WorkerPool
+{
+	private File packagePath;
+	//The address of the Client's Oracle server (or null if not interactive)
+	private String oracleAddress;
+	private BlockingQueue<Worker> idle;
+	private AtomicInteger live;
+	//Kills the workers whose tasks exceed the time limit
+	private ScheduledExecutorService watchdog;
+	
+	/**
+	 * Constructs a new WorkerPool, starting the given number of worker
+	 * processes and waiting for them to load the tool
+	 * @param packagePath: the location of the tool package
+	 * @param size: the number of worker processes
+	 * @param oracleAddress: the address of the Oracle server the workers
+	 * can query (or null if the matching is not interactive)
+	 * @throws IOException if no worker process could be started
+	 */
+	public WorkerPool(File packagePath, int size, String oracleAddress) throws IOException
+	{
+		this.packagePath = packagePath.getAbsoluteFile();
+		this.oracleAddress = oracleAddress;
+		idle = new LinkedBlockingQueue<Worker>();
+		live = new AtomicInteger(0);
+		watchdog = Executors.newSingleThreadScheduledExecutor();
+		//Start all workers before waiting for them, so they load the tool in parallel
+		Vector<Worker> starting = new Vector<Worker>();
+		for(int i = 0; i < size; i++)
+			starting.add(new Worker());
+		IOException failure = null;
+		for(Worker w : starting)
+		{
+			try
+			{
+				w.awaitReady();
+				live.incrementAndGet();
+				idle.add(w);
+			}
+			catch(IOException e)
+			{
+				w.destroy();
+				failure = e;
+			}
+		}
+		if(live.get() == 0)
+			throw failure;
+	}
+	
+	/**
+	 * Takes an idle worker process, waiting for one to be available, to execute
+	 * a matching task with align (which returns it to the pool)
+	 * @return the worker process
+	 * @throws WorkerException if all worker processes have crashed
+	 * @throws InterruptedException if interrupted while waiting for a worker
+	 */
+	public Worker take() throws WorkerException, InterruptedException
+	{
+		Worker w;
+		while((w = idle.poll(1, TimeUnit.SECONDS)) == null)
+			if(live.get() == 0)
+				throw new WorkerException("No matcher workers available");
+		return w;
+	}
+	
+	/**
+	 * Executes a matching task in a worker process taken from the pool, and
+	 * returns the worker to the pool (or replaces it, if it crashed)
+	 * @param w: the worker process, from take
+	 * @param source: the URL of the source ontology
+	 * @param target: the URL of the target ontology
+	 * @param input: the URL of the input alignment (or null if none)
+	 * @param task: the test case whose Oracle session the tool can query (or null if none)
+	 * @param timeout: the time limit for the task in milliseconds (0 for no limit)
+	 * @return the URL of the output alignment (or null if none was produced)
+	 * @throws WorkerException if the tool failed or the worker crashed
+	 * @throws TimeoutException if the task exceeded the time limit, in which
+	 * case the worker is killed and replaced
+	 */
+	public URL align(final Worker w, URL source, URL target, URL input, String task, long timeout)
+			throws WorkerException, TimeoutException
+	{
+		Worker next = w;
+		ScheduledFuture<?> kill = null;
+		if(timeout > 0)
+		{
+			kill = watchdog.schedule(new Runnable()
+			{
+				public void run()
+				{
+					w.destroy();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+		try
+		{
+			String reply = w.request("ALIGN\t" + source + "\t" + target + "\t" + (input == null ? "-" : input.toString()) +
+					"\t" + (task == null ? "-" : task));
+			//If the watchdog fired as the reply arrived, the worker is dead but the reply is valid
+			if(kill != null && !kill.cancel(false))
+				next = replace(w);
+			if(reply.startsWith("OK\t"))
+				return new URL(reply.substring(3));
+			if(reply.equals("NULL"))
+				return null;
+			//The worker is no longer usable after a fatal error
+			if(reply.startsWith("FATAL\t") && next == w)
+				next = replace(w);
+			throw new WorkerException(reply.substring(reply.indexOf('\t') + 1));
+		}
+		catch(IOException e)
+		{
+			next = replace(w);
+			if(kill != null && kill.isDone())
+				throw new TimeoutException();
+			throw new WorkerException("Worker process crashed (" + e.getMessage() + ")");
+		}
+		finally
+		{
+			if(kill != null)
+				kill.cancel(false);
+			if(next != null)
+				idle.add(next);
+		}
+	}
+	
+	/**
+	 * Stops all worker processes
+	 */
+	public void shutdown()
+	{
+		Worker w;
+		while((w = idle.poll()) != null)
+		{
+			w.exit();
+			live.decrementAndGet();
+		}
+		watchdog.shutdownNow();
+	}
+	
+	//Replaces a crashed worker with a new one, returning
+	//the new worker or null if it could not be started
+	private Worker replace(Worker w)
+	{
+		w.destroy();
+		System.err.println("Restarting matcher worker...");
+		Worker n = null;
+		try
+		{
+			n = new Worker();
+			n.awaitReady();
+		}
+		catch(IOException e)
+		{
+			System.err.println("Unable to restart matcher worker: " + e.getMessage());
+			if(n != null)
+				n.destroy();
+			n = null;
+			live.decrementAndGet();
+		}
+		return n;
+	}
+	
+	/**
+	 * A matcher worker process (which is only handed out by take, to be
+	 * passed to align)
+	 */
+	public class Worker
+	{
+		private Process process;
+		private Writer in;
+		private BufferedReader out;
+		
+		//Starts the worker process with the same Java runtime, class path and
+		//JVM settings (heap size and system properties) as the Client, and
+		//with the address of its Oracle server
+		private Worker() throws IOException
+		{
+			Vector<String> command = new Vector<String>();
+			command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+			for(String arg : ManagementFactory.getRuntimeMXBean().getInputArguments())
+				if(arg.startsWith("-X") || arg.startsWith("-D"))
+					command.add(arg);
+			if(oracleAddress != null)
+				command.add("-D" + Oracle.SERVER_PROPERTY + "=" + oracleAddress);
+			command.add("-cp");
+			command.add(System.getProperty("java.class.path"));
+			command.add(MatcherWorker.class.getName());
+			command.add(packagePath.getPath());
+			ProcessBuilder builder = new ProcessBuilder(command);
+			builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+			process = builder.start();
+			in = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+			out = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		}
+		
+		//Waits until the worker has loaded the tool
+		private void awaitReady() throws IOException
+		{
+			String reply = out.readLine();
+			if(reply == null)
+				throw new IOException("worker process exited");
+			if(!reply.equals("READY"))
+				throw new IOException(reply.substring(reply.indexOf('\t') + 1));
+		}
+		
+		//Sends a request to the worker and waits for its reply
+		private String request(String request) throws IOException
+		{
+			in.write(request + "\n");
+			in.flush();
+			String reply = out.readLine();
+			if(reply == null)
+				throw new IOException("worker process exited");
+			return reply;
+		}
+		
+		//Asks the worker to exit
+		private void exit()
+		{
+			try
+			{
+				in.write("EXIT\n");
+				in.flush();
+				in.close();
+			}
+			catch(IOException e)
+			{
+				destroy();
+			}
+		}
+		
+		//Kills the worker process
+		private void destroy()
+		{
+			process.destroy();
+		}
+	}
+}
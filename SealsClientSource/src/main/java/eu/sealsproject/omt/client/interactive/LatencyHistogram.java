@@ -0,0 +1,133 @@
+package eu.sealsproject.omt.client.interactive;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size histogram of time intervals (in microseconds) with
+ * logarithmic buckets: intervals under 16 microseconds are counted exactly,
+ * and each power of two above that is split into 16 buckets, so percentiles
+ * are accurate to within 1/16 (6.25%) of their value. Recording an interval
+ * is thread-safe and takes constant time and memory.
+ *
+ * @author Daniel Faria
+ */
+
+class LatencyHistogram
+{
+	//Number of bits of each value kept below its highest bit
+	private static final int SUB_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	//Buckets for all positive longs
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+	private final AtomicLongArray buckets;
+	private final AtomicLong count;
+	private final AtomicLong max;
+
+	/**
+	 * Constructs a new empty LatencyHistogram
+	 */
+	LatencyHistogram()
+	{
+		buckets = new AtomicLongArray(BUCKETS);
+		count = new AtomicLong(0);
+		max = new AtomicLong(0);
+	}
+
+	/**
+	 * Records an interval
+	 * @param micros: the interval in microseconds (negative intervals count as 0)
+	 */
+	void record(long micros)
+	{
+		if(micros < 0)
+			micros = 0;
+		buckets.incrementAndGet(bucket(micros));
+		count.incrementAndGet();
+		long m;
+		while(micros > (m = max.get()) && !max.compareAndSet(m, micros));
+	}
+
+	/**
+	 * Adds the intervals of another histogram to this one
+	 * @param h: the histogram to add
+	 */
+	void add(LatencyHistogram h)
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			long n = h.buckets.get(i);
+			if(n > 0)
+				buckets.addAndGet(i, n);
+		}
+		count.addAndGet(h.count.get());
+		long m, hm = h.max.get();
+		while(hm > (m = max.get()) && !max.compareAndSet(m, hm));
+	}
+
+	/**
+	 * @return the number of intervals recorded
+	 */
+	long count()
+	{
+		return count.get();
+	}
+
+	/**
+	 * @return the longest interval recorded (0 if there are none)
+	 */
+	long max()
+	{
+		return max.get();
+	}
+
+	/**
+	 * @param p: the percentile, between 0 and 100
+	 * @return the upper bound of the bucket of the interval at the given
+	 * percentile (or the longest interval, if it is smaller), or 0 if there
+	 * are no intervals
+	 */
+	long percentile(double p)
+	{
+		long total = count.get();
+		if(total == 0)
+			return 0;
+		long rank = Math.max(1, (long)Math.ceil(p / 100 * total));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += buckets.get(i);
+			if(seen >= rank)
+				return Math.min(i + 1 < BUCKETS ? lowest(i + 1) - 1 : Long.MAX_VALUE, max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * @return the 50th, 90th and 99th percentiles and the maximum, tab-separated
+	 */
+	String summary()
+	{
+		return percentile(50) + "\t" + percentile(90) + "\t" + percentile(99) + "\t" + max();
+	}
+
+	//The bucket of a (non-negative) value
+	private static int bucket(long v)
+	{
+		if(v < SUB_BUCKETS)
+			return (int)v;
+		int e = 63 - Long.numberOfLeadingZeros(v);
+		int sub = (int)(v >>> (e - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return SUB_BUCKETS + (e - SUB_BITS) * SUB_BUCKETS + sub;
+	}
+
+	//The lowest value in a bucket
+	private static long lowest(int bucket)
+	{
+		if(bucket < SUB_BUCKETS)
+			return bucket;
+		int e = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+		int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+		return (long)(SUB_BUCKETS + sub) << (e - SUB_BITS);
+	}
+}
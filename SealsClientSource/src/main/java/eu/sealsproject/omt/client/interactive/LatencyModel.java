@@ -0,0 +1,136 @@
+package eu.sealsproject.omt.client.interactive;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The time a simulated user takes to answer a question of the Oracle.
+ * A model is given in one of the forms:
+ * - "fixed:<ms>": every answer takes the given time
+ * - "lognormal:<median ms>:<sigma>": answer times follow a lognormal
+ *   distribution with the given median and shape (the same question gets
+ *   the same time with the same Oracle seed)
+ * - "trace:<file>": answer times are replayed from a file with one time
+ *   in milliseconds per line, in the order in which the questions arrive
+ *   (and from the start again when the file ends)
+ *
+ * @author Daniel Faria
+ */
+
+public class LatencyModel
+{
+	private static final int FIXED = 0;
+	private static final int LOGNORMAL = 1;
+	private static final int TRACE = 2;
+	private int type;
+	//The fixed time or the median, in microseconds
+	private long micros;
+	private double sigma;
+	//The replayed times, in microseconds
+	private long[] trace;
+	private AtomicInteger next;
+
+	private LatencyModel(int type)
+	{
+		this.type = type;
+	}
+
+	/**
+	 * Parses a latency model
+	 * @param model: the model, in one of the forms above
+	 * @return the latency model
+	 * @throws IllegalArgumentException if the model isn't valid
+	 * @throws IOException if the trace file can't be read
+	 */
+	public static LatencyModel parse(String model) throws IOException
+	{
+		String[] fields = model.split(":", 2);
+		LatencyModel m;
+		if(fields[0].equalsIgnoreCase("fixed") && fields.length == 2)
+		{
+			m = new LatencyModel(FIXED);
+			m.micros = micros(Double.parseDouble(fields[1]));
+		}
+		else if(fields[0].equalsIgnoreCase("lognormal") && fields.length == 2)
+		{
+			String[] parameters = fields[1].split(":");
+			if(parameters.length != 2)
+				throw new IllegalArgumentException("Invalid lognormal latency model: " + model);
+			m = new LatencyModel(LOGNORMAL);
+			m.micros = micros(Double.parseDouble(parameters[0]));
+			m.sigma = Double.parseDouble(parameters[1]);
+			if(m.sigma < 0)
+				throw new IllegalArgumentException("Invalid lognormal latency model: " + model);
+		}
+		else if(fields[0].equalsIgnoreCase("trace") && fields.length == 2)
+		{
+			m = new LatencyModel(TRACE);
+			m.trace = readTrace(new File(fields[1]));
+			m.next = new AtomicInteger(0);
+		}
+		else
+			throw new IllegalArgumentException("Invalid latency model: " + model);
+		return m;
+	}
+
+	/**
+	 * @param u1: a uniform number in [0,1) determined by the question
+	 * @param u2: another uniform number in [0,1) determined by the question
+	 * @return the time to answer the question, in microseconds
+	 */
+	long sample(double u1, double u2)
+	{
+		if(type == FIXED)
+			return micros;
+		if(type == LOGNORMAL)
+		{
+			//Box-Muller transform of the two uniform numbers
+			double z = Math.sqrt(-2 * Math.log(1 - u1)) * Math.cos(2 * Math.PI * u2);
+			return (long)(micros * Math.exp(sigma * z));
+		}
+		return trace[(next.getAndIncrement() & Integer.MAX_VALUE) % trace.length];
+	}
+
+	private static long[] readTrace(File f) throws IOException
+	{
+		BufferedReader in = new BufferedReader(new FileReader(f));
+		long[] times = new long[64];
+		int n = 0;
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.isEmpty())
+					continue;
+				if(n == times.length)
+				{
+					long[] t = new long[2 * n];
+					System.arraycopy(times, 0, t, 0, n);
+					times = t;
+				}
+				times[n++] = micros(Double.parseDouble(line));
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		if(n == 0)
+			throw new IllegalArgumentException("Empty latency trace: " + f);
+		long[] t = new long[n];
+		System.arraycopy(times, 0, t, 0, n);
+		return t;
+	}
+
+	private static long micros(double millis)
+	{
+		if(millis < 0 || Double.isNaN(millis))
+			throw new IllegalArgumentException("Invalid latency: " + millis);
+		return (long)(millis * 1000);
+	}
+}
@@ -1,15 +1,24 @@
 package eu.sealsproject.omt.client.interactive;
 
+import eu.sealsproject.omt.client.AbstractAlignment;
 import eu.sealsproject.omt.client.HashAlignment;
 import eu.sealsproject.omt.client.Relation;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simulates user interaction through the use of a reference alignment
@@ -18,22 +27,44 @@ import java.util.Vector;
  */
 public class Oracle
 {	
-	private static HashAlignment refAlign;
+	/**
+	 * The system property with the address (host:port) of the Oracle server
+	 * to query, in processes other than the Client's
+	 */
+	public static final String SERVER_PROPERTY = "seals.oracle";
+	/**
+	 * The system property with the identifier of the test case to query
+	 * the Oracle server about
+	 */
+	public static final String TASK_PROPERTY = "seals.oracle.task";
+	//The session of the task that each thread is working on (threads created
+	//by the task inherit its session)
+	private static final InheritableThreadLocal<OracleSession> current = new InheritableThreadLocal<OracleSession>();
+	//The active sessions, by test case
+	private static final ConcurrentHashMap<String,OracleSession> sessions = new ConcurrentHashMap<String,OracleSession>();
 	private static double error = 0.0;
-	private static boolean interactive = false;
-	private static HashAlignment positive;
-	private static HashAlignment negative;
-	private static Vector<Long> timeIntervals;
-	private static long previousTime;
+	private static long seed = 0;
 	private static String outRawResultFolder;
-	private static String testCaseId;
-	private static File queryLog;
-	private static File timeLog;
-	private static File results;
+	//The logs of the suite (written in the background)
+	private static OracleLog log;
+	//Suite statistics (updated by the sessions as they end, under the Oracle lock)
 	private static int[][] oracleClassMatrix;
-	private static int count;
-	private static int totalCount;
+	private static final AtomicInteger totalCount = new AtomicInteger(0);
 	private static int totalDistinctCount;
+	private static int totalPositive;
+	private static int totalNegative;
+	private static LatencyHistogram totalIntervals;
+	private static long totalUserTime;
+	private static long totalIdleTime;
+	private static long totalOverlappedTime;
+	//The time the simulated user takes to answer (or null if answers are immediate)
+	private static LatencyModel latency;
+	//Gives the answers of checkAsync when the simulated user has answered them
+	private static ScheduledExecutorService scheduler;
+	//The Oracle server of the Client, if started
+	private static OracleServer server;
+	//The connection to the Oracle server, in other processes
+	private static volatile OracleClient remote;
 	
 	/**
 	 * Checks whether a given mapping is correct
@@ -63,44 +94,79 @@ public class Oracle
 	 * @param uri1: the URI of the source ontology entity
 	 * @param uri2: the URI of the target ontology entity
 	 * @param rel: the mapping Relation
-	 * @return
+	 * @return whether the mapping is correct
 	 */
 	public static boolean check(String uri1, String uri2, Relation rel)
 	{
-		//Check interactive
-		if(!interactive)
+		//Query the Oracle server, if this isn't the Client's process
+		try
+		{
+			OracleClient remote = remote();
+			if(remote != null)
+				return remote.check(uri1, uri2, rel);
+		}
+		catch(IOException e)
+		{
+			remoteError(e);
 			return false;
-		//Record time since previous request
-		long time = System.currentTimeMillis();
-		if(previousTime != -1)
-			timeIntervals.add(time - previousTime);
-		previousTime = time;
-		count++;
-		totalCount++;
-		//If the query was already done, return the result
-		if(positive.contains(uri1, uri2, rel))
-			return true;
-		if(negative.contains(uri1, uri2, rel))
+		}
+		//Check interactive
+		OracleSession session = session();
+		if(session == null)
 			return false;
-		//Otherwise, if the mapping between uri1 and uri2 is 'unknown' in the
-		//reference alignment return false by default, but do not store it or
-		//count it as a query (it will also not count in the evaluation)
-		if(refAlign.contains(uri1, uri2, Relation.UNKNOWN))
+		return session.check(uri1, uri2, rel);
+	}
+	
+	/**
+	 * Checks whether each of a batch of Mappings is correct, as a single
+	 * interaction with the user
+	 * @param maps: the Mappings to check
+	 * @return whether each mapping is correct, in the iteration order of maps
+	 */
+	public static boolean[] checkAll(Collection<Mapping> maps)
+	{
+		try
 		{
-			negative.add(uri1, uri2, rel);
-			return false;
+			OracleClient remote = remote();
+			if(remote != null)
+				return remote.checkAll(maps);
+		}
+		catch(IOException e)
+		{
+			remoteError(e);
+			return new boolean[maps.size()];
+		}
+		OracleSession session = session();
+		if(session == null)
+			return new boolean[maps.size()];
+		return session.checkAll(maps);
+	}
+	
+	/**
+	 * Checks whether a given mapping is correct without waiting for the
+	 * answer, which is given after the time the simulated user takes to
+	 * answer (see the --latency option of the Client), so that the matcher
+	 * can do other work in the meantime
+	 * @param m: the Mapping to check
+	 * @return the future answer: whether the mapping is correct
+	 */
+	public static Future<Boolean> checkAsync(Mapping m)
+	{
+		try
+		{
+			OracleClient remote = remote();
+			if(remote != null)
+				return new RemoteAnswer(remote.submit(Collections.singletonList(m)));
 		}
-		//Check if the query is present in the reference alignment
-		boolean classification = refAlign.contains(uri1,uri2,rel);
-		//Reverse the classification with probability given by the error
-		if(Math.random() < error)
-			classification = !classification;
-		//Store the request
-		if(classification)
-			positive.add(uri1, uri2, rel);
-		else
-			negative.add(uri1, uri2, rel);
-		return classification;
+		catch(IOException e)
+		{
+			remoteError(e);
+			return OracleSession.completed(false);
+		}
+		OracleSession session = session();
+		if(session == null)
+			return OracleSession.completed(false);
+		return session.checkAsync(m);
 	}
 	
 	/**
@@ -110,32 +176,21 @@ public class Oracle
 	 */
 	public static Set<Mapping> check(Set<Mapping> maps)
 	{
-		//Check each mapping in the given
-		Set<Mapping> correct = new HashSet<Mapping>();
-		for(Mapping m : maps)
-			if(check(m))
-				correct.add(m);
-		//If a set of 2 or 3 conflicting mappings was given
-		//reduce the count so that they are counted as a
-		//group rather than as individual mappings
-		if(maps.size() > 1 && maps.size() < 4)
+		try
 		{
-			int related = 0;
-			Vector<Mapping> mapList = new Vector<Mapping>(maps);
-			for(int i = 0; i < mapList.size()-1 && related < 2; i++)
-			{
-				for(int j = i+1; j < mapList.size(); j++)
-				{
-					if(mapList.get(i).getSourceURI().equals(mapList.get(j).getSourceURI()) ||
-							mapList.get(i).getTargetURI().equals(mapList.get(j).getTargetURI()))
-						related++;
-				}
-			}
-			count -= related;
-			totalCount -= related;
+			OracleClient remote = remote();
+			if(remote != null)
+				return remote.check(maps);
+		}
+		catch(IOException e)
+		{
+			remoteError(e);
+			return new HashSet<Mapping>();
 		}
-		//Return the set of correct mappings
-		return correct;
+		OracleSession session = session();
+		if(session == null)
+			return new HashSet<Mapping>();
+		return session.check(maps);
 	}
 	
 	/**
@@ -146,221 +201,164 @@ public class Oracle
 		return 1.0 - error;
 	}
 
-	//Ends a matching suite from an OAEI track
-	//Saves the logs and statistics, then reset the task variables 
+	//Ends a matching task
+	//Saves the logs and statistics, then releases the session
 	//WARNING: Internal Client use only
-	public static void endTask()
+	public static void endTask(OracleSession session)
 	{
-		//Ensure that this method was called from the Client by checking the stack trace
-		if(!Thread.currentThread().getStackTrace()[2].toString().startsWith("eu.sealsproject.omt.client.Client"))
-		{
-			System.out.println("WARNING: Illegal access to Oracle class!");
-			System.exit(-1);
-		}
-		if(outRawResultFolder != null && testCaseId != null)
+		checkAccess();
+		session.end();
+		sessions.remove(key(session.getTestCaseId()), session);
+		if(current.get() == session)
+			current.remove();
+		//The answers were classified and logged as they were given,
+		//so only the statistics are left
+		int[][] classMatrix = session.getClassMatrix();
+		int positive = classMatrix[0][0] + classMatrix[0][1];
+		int negative = classMatrix[1][0] + classMatrix[1][1];
+		int distinct = positive + negative;
+		//Concurrent tasks update the suite statistics one at a time
+		synchronized(Oracle.class)
 		{
-			//Save the query log and compile the classification matrix
-			BufferedWriter writer;
-			int[][] classMatrix = new int[2][2];
-			try
-			{
-				writer = new BufferedWriter(new FileWriter(queryLog, true));
-				writer.append(testCaseId + "\n");
-				for(String source : positive.getSources())
-				{
-					for(String target : positive.getTargets(source))
-					{
-						for(Relation r : positive.getRelations(source,target))
-						{
-							//True positives
-							if(refAlign.contains(source, target, r) || refAlign.contains(source, target, Relation.UNKNOWN))
-							{
-								writer.append(source + " " + r.toString() + " " + target + "\tTP\n");
-								classMatrix[0][0]++;
-								oracleClassMatrix[0][0]++;
-							}
-							//False positives
-							else
-							{
-								writer.append(source + " " + r.toString() + " " + target + "\tFP\n");
-								classMatrix[0][1]++;
-								oracleClassMatrix[0][1]++;
-							}
-						}
-					}
-				}
-				for(String source : negative.getSources())
-				{
-					for(String target : negative.getTargets(source))
-					{
-						for(Relation r : negative.getRelations(source,target))
-						{
-							//False negatives
-							if(refAlign.contains(source, target, r))
-							{
-								writer.append(source + " " + r.toString() + " " + target + "\tFN\n");
-								classMatrix[1][1]++;
-								oracleClassMatrix[1][1]++;
-							}
-							//True negatives
-							else
-							{
-								writer.append(source + " " + r.toString() + " " + target + "\tTN\n");
-								classMatrix[1][0]++;
-								oracleClassMatrix[1][0]++;
-							}
-						}
-					}
-				}
-				writer.flush();
-				writer.close();
-			}
-			catch(IOException e)
-			{
-				System.err.println("Error writing query log file: " + e.getMessage());
-				e.printStackTrace();
-			}
-			//Save the time interval log
-			try
+			if(oracleClassMatrix != null)
 			{
-				writer = new BufferedWriter(new FileWriter(timeLog, true));
-				writer.append(testCaseId + "\n");
-				for(Long interval : timeIntervals)
-					writer.append(interval + "\n");
-				writer.flush();
-				writer.close();
-			}
-			catch(IOException e)
-			{
-				System.err.println("Error writing time interval log file: " + e.getMessage());
-				e.printStackTrace();
-			}
-			//Save the statistics
-			try
-			{
-				writer = new BufferedWriter(new FileWriter(results, true));
-				int distinct = positive.size()+negative.size();
+				for(int i = 0; i < 2; i++)
+					for(int j = 0; j < 2; j++)
+						oracleClassMatrix[i][j] += classMatrix[i][j];
 				totalDistinctCount += distinct;
-				double precision = Math.min(Math.round(classMatrix[0][0] * 1000.0 / positive.size())/1000.0, 1.0);
-				double negPrecision = Math.min(Math.round(classMatrix[1][0] * 1000.0 / negative.size())/1000.0, 1.0);
-				writer.append(testCaseId + "\t" + count + "\t" + distinct + "\t" + classMatrix[0][0] + "\t" +
-						classMatrix[1][0] + "\t" + classMatrix[0][1] + "\t" + classMatrix[1][1] +
-						"\t" + precision + "\t" + negPrecision + "\n");
-				writer.flush();
-				writer.close();
+				totalPositive += positive;
+				totalNegative += negative;
+				totalIntervals.add(session.getIntervals());
+				totalUserTime += session.getUserTime();
+				totalIdleTime += session.getIdleTime();
+				totalOverlappedTime += overlapped(session.getUserTime(), session.getIdleTime());
 			}
-			catch(IOException e)
-			{
-				System.err.println("Error writing results file: " + e.getMessage());
-				e.printStackTrace();
-			}	
-
 		}
-		refAlign = null;
-		testCaseId = null;
-		timeIntervals = null;
-		interactive = false;
+		if(session.getLog() != null)
+		{
+			double precision = Math.min(Math.round(classMatrix[0][0] * 1000.0 / positive)/1000.0, 1.0);
+			double negPrecision = Math.min(Math.round(classMatrix[1][0] * 1000.0 / negative)/1000.0, 1.0);
+			session.getLog().end(session.getLogTask(), session.getTestCaseId() + "\t" + session.getCount() + "\t" + distinct + "\t" +
+					classMatrix[0][0] + "\t" + classMatrix[1][0] + "\t" + classMatrix[0][1] + "\t" + classMatrix[1][1] +
+					"\t" + precision + "\t" + negPrecision + "\t" + session.getIntervals().summary() +
+					"\t" + times(session.getUserTime(), session.getIdleTime(),
+							overlapped(session.getUserTime(), session.getIdleTime())));
+		}
 	}
 	
 	//Ends a matching suite from an OAEI track
 	//WARNING: Internal Client use only
 	public static void endSuite()
 	{
-		//Ensure that this method was called from the Client by checking the stack trace
-		if(!Thread.currentThread().getStackTrace()[2].toString().startsWith("eu.sealsproject.omt.client.Client"))
+		checkAccess();
+		if(log != null)
 		{
-			System.out.println("WARNING: Illegal access to Oracle class!");
-			System.exit(-1);
+			//Write the global statistics and wait for the logs to be written
+			double precision = Math.min(Math.round(oracleClassMatrix[0][0] * 1000.0 / totalPositive)/1000.0, 1.0);
+			double negPrecision = Math.min(Math.round(oracleClassMatrix[1][0] * 1000.0 / totalNegative)/1000.0, 1.0);
+			log.close("Global\t" + totalCount + "\t" + totalDistinctCount + "\t" + oracleClassMatrix[0][0] + "\t" +
+					oracleClassMatrix[1][0] + "\t" + oracleClassMatrix[0][1] + "\t" + oracleClassMatrix[1][1] +
+					"\t" + precision + "\t" + negPrecision + "\t" + totalIntervals.summary() +
+					"\t" + times(totalUserTime, totalIdleTime, totalOverlappedTime));
+			log = null;
 		}
-		if(outRawResultFolder != null)
+		outRawResultFolder = null;
+		oracleClassMatrix = null;
+		if(server != null)
 		{
-			try
-			{
-				BufferedWriter writer = new BufferedWriter(new FileWriter(results, true));
-				double precision = Math.min(Math.round(oracleClassMatrix[0][0] * 1000.0 / positive.size())/1000.0, 1.0);
-				double negPrecision = Math.min(Math.round(oracleClassMatrix[1][0] * 1000.0 / negative.size())/1000.0, 1.0);
-				writer.append("Global\t" + totalCount + "\t" + totalDistinctCount + "\t" + oracleClassMatrix[0][0] + "\t" +
-						oracleClassMatrix[1][0] + "\t" + oracleClassMatrix[0][1] + "\t" + oracleClassMatrix[1][1] +
-						"\t" + precision + "\t" + negPrecision + "\n");
-				writer.flush();
-				writer.close();
-			}
-			catch(IOException e)
-			{
-				System.err.println("Error writing results file: " + e.getMessage());
-				e.printStackTrace();
-			}
-			outRawResultFolder = null;
+			server.stop();
+			server = null;
 		}
-		oracleClassMatrix = null;
 	}
 	
 	/**
 	 * @return the reference alignment according to the Oracle
 	 * (i.e., with false positives and negatives introduced
-	 * according to the error rate).
+	 * according to the error rate) for the current task,
+	 * or null if there is no current task
 	 */
 	public static HashAlignment getOracleReference()
 	{
-		//Initiate as a copy of the true reference
-		HashAlignment oracleAlign = new HashAlignment(refAlign);
-		//Add false positives
-		for(String source : positive.getSources())
-			for(String target : positive.getTargets(source))
-				for(Relation r : positive.getRelations(source,target))
-					if(!refAlign.contains(source, target, r))
-						oracleAlign.add(source, target, r);
-		//Remove false negatives
-		for(String source : negative.getSources())
-			for(String target : negative.getTargets(source))
-				for(Relation r : negative.getRelations(source,target))
-					if(refAlign.contains(source, target, r))
-						oracleAlign.remove(source, target, r);
-		return oracleAlign;
+		try
+		{
+			OracleClient remote = remote();
+			if(remote != null)
+				return remote.getOracleReference();
+		}
+		catch(IOException e)
+		{
+			remoteError(e);
+			return null;
+		}
+		OracleSession session = session();
+		if(session == null)
+			return null;
+		return session.getOracleReference();
 	}
 	
 	/**
-	 * @return whether the track interactive
+	 * @return whether the current task is interactive
 	 */
 	public static boolean isInteractive()
 	{
-		return interactive;
+		try
+		{
+			OracleClient remote = remote();
+			if(remote != null)
+				return remote.isInteractive();
+		}
+		catch(IOException e)
+		{
+			remoteError(e);
+			return false;
+		}
+		return session() != null;
+	}
+	
+	//Binds the current thread to the session of a task (for threads that
+	//run the task but weren't started by the thread that started it)
+	//WARNING: Internal Client use only
+	public static void bind(OracleSession session)
+	{
+		checkAccess();
+		current.set(session);
+	}
+	
+	//Unbinds the current thread from its session
+	//WARNING: Internal Client use only
+	public static void unbind()
+	{
+		checkAccess();
+		current.remove();
 	}
 	
 	//Starts a matching suite for an OAEI track
 	//WARNING: Internal Client use only
-	public static void startSuite(double e, String folder)
+	public static void startSuite(double e, String folder, long s, boolean logIntervals, LatencyModel m)
 	{
-		//Ensure that this method was called from the Client by checking the stack trace
-		if(!Thread.currentThread().getStackTrace()[2].toString().startsWith("eu.sealsproject.omt.client.Client"))
-		{
-			System.out.println("WARNING: Illegal access to Oracle class!");
-			System.exit(-1);
-		}
+		checkAccess();
 		error = e;
+		seed = s;
+		latency = m;
 		oracleClassMatrix = new int[2][2];
 		outRawResultFolder = folder;
-		totalCount = 0;
+		totalCount.set(0);
+		totalIntervals = new LatencyHistogram();
+		totalUserTime = 0;
+		totalIdleTime = 0;
+		totalOverlappedTime = 0;
 		totalDistinctCount = 0;
+		totalPositive = 0;
+		totalNegative = 0;
 		if(outRawResultFolder != null)
 		{
 			File resultsFolder = new File(outRawResultFolder);
 			resultsFolder.mkdir();
-			queryLog = new File(resultsFolder, "interactive_query_log.txt");
-			if(queryLog.exists())
-				queryLog.delete();
-			timeLog = new File(resultsFolder, "interactive_request_intervals.txt");
-			if(timeLog.exists())
-				timeLog.delete();
-			results = new File(resultsFolder, "interactive_results.txt");
-			if(results.exists())
-				results.delete();
 			try
 			{
-				BufferedWriter writer = new BufferedWriter(new FileWriter(results, true));
-				writer.append("Test Case ID\tTotal Requests\tDistinct Requests\tTrue Positives\tTrue Negatives\tFalse Positives\tFalse Negatives\tPrecision\tNegative Precision\n");
-				writer.flush();
-				writer.close();
+				log = new OracleLog(resultsFolder, "Test Case ID\tTotal Requests\tDistinct Requests\tTrue Positives\tTrue Negatives\tFalse Positives\tFalse Negatives\tPrecision\tNegative Precision\t" +
+						"Interval p50 (us)\tInterval p90 (us)\tInterval p99 (us)\tInterval Max (us)\t" +
+						"User Time (ms)\tIdle Time (ms)\tOverlapped Time (ms)\n", logIntervals);
 			}
 			catch(IOException e1)
 			{
@@ -370,23 +368,172 @@ public class Oracle
 		}
 	}
 
-	//Starts a matching task for an OAEI track
+	//Serves the Oracle on the given local port (0 for any free port) to the
+	//matchers running in other processes, returning the address of the server
+	//WARNING: Internal Client use only
+	public static String startServer(int port) throws IOException
+	{
+		checkAccess();
+		if(server == null)
+			server = new OracleServer(port);
+		return server.getAddress();
+	}
+
+	//Starts a matching task for an OAEI track, binding its session to the current thread
 	//WARNING: Internal Client use only
-	public static void startTask(HashAlignment referenceAlignment, String id)
+	public static OracleSession startTask(AbstractAlignment referenceAlignment, String id)
 	{
-		//Ensure that this method was called from the Client by checking the stack trace
-		if(!Thread.currentThread().getStackTrace()[2].toString().startsWith("eu.sealsproject.omt.client.Client"))
+		checkAccess();
+		OracleSession session = new OracleSession(referenceAlignment, id, error, seed, id == null ? null : log, latency);
+		sessions.put(key(id), session);
+		current.set(session);
+		return session;
+	}
+	
+	//Counts requests (or discounts related requests) in the suite statistics
+	static void countRequest(int n)
+	{
+		totalCount.addAndGet(n);
+	}
+	
+	//Ensures that the calling method was called from the Client by checking the stack trace
+	private static void checkAccess()
+	{
+		if(!Thread.currentThread().getStackTrace()[3].toString().startsWith("eu.sealsproject.omt.client.Client"))
 		{
 			System.out.println("WARNING: Illegal access to Oracle class!");
 			System.exit(-1);
 		}
-		count = 0;
-		refAlign = referenceAlignment;
-		testCaseId = id;
-		interactive = true;
-		previousTime = -1;
-		timeIntervals = new Vector<Long>();
-		positive = new HashAlignment();
-		negative = new HashAlignment();
+	}
+	
+	private static String key(String id)
+	{
+		return id == null ? "" : id;
+	}
+	
+	//Gets the scheduler of the asynchronous answers
+	static synchronized ScheduledExecutorService scheduler()
+	{
+		if(scheduler == null)
+		{
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+			{
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, "oracle-user");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return scheduler;
+	}
+
+	//The time taken by the simulated user, the time the matcher spent waiting
+	//for it and the time the matcher overlapped with it, from microseconds to ms
+	private static String times(long userTime, long idleTime, long overlappedTime)
+	{
+		return userTime / 1000 + "\t" + idleTime / 1000 + "\t" + overlappedTime / 1000;
+	}
+
+	//The time of the simulated user that the matcher didn't spend waiting for it
+	private static long overlapped(long userTime, long idleTime)
+	{
+		return Math.max(0, userTime - idleTime);
+	}
+
+	//Gets the active session of the given test case, or the session of the
+	//current thread if no test case is given ("")
+	static OracleSession session(String id)
+	{
+		OracleSession session = sessions.get(id);
+		if(session != null && session.isActive())
+			return session;
+		return id.length() == 0 ? session() : null;
+	}
+
+	//Gets the connection to the Oracle server, if one is configured (i.e.,
+	//if this is a process other than the Client's), selecting the test case
+	private static OracleClient remote() throws IOException
+	{
+		String address = setting(SERVER_PROPERTY, "SEALS_ORACLE");
+		if(address == null)
+			return null;
+		OracleClient r = remote;
+		if(r == null || r.isClosed())
+		{
+			synchronized(Oracle.class)
+			{
+				r = remote;
+				if(r == null || r.isClosed())
+					remote = r = new OracleClient(address);
+			}
+		}
+		String task = setting(TASK_PROPERTY, "SEALS_ORACLE_TASK");
+		r.setTask(task == null ? "" : task);
+		return r;
+	}
+
+	//Gets a setting from a system property, or else from an environment variable
+	private static String setting(String property, String variable)
+	{
+		String value = System.getProperty(property);
+		return value != null ? value : System.getenv(variable);
+	}
+
+	private static void remoteError(IOException e)
+	{
+		System.err.println("Error querying the Oracle server: " + e.getMessage());
+	}
+	
+	//Gets the session of the current thread, or the only active session if the
+	//thread isn't bound to one (e.g., if it belongs to a thread pool of the tool
+	//that was created before the task started)
+	private static OracleSession session()
+	{
+		OracleSession session = current.get();
+		if(session != null && session.isActive())
+			return session;
+		if(sessions.size() == 1)
+			for(OracleSession s : sessions.values())
+				if(s.isActive())
+					return s;
+		return null;
+	}
+
+	//The answer to a single question sent to the Oracle server
+	private static class RemoteAnswer implements Future<Boolean>
+	{
+		private final Future<boolean[]> answer;
+
+		RemoteAnswer(Future<boolean[]> f)
+		{
+			answer = f;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			return answer.cancel(mayInterruptIfRunning);
+		}
+
+		public boolean isCancelled()
+		{
+			return answer.isCancelled();
+		}
+
+		public boolean isDone()
+		{
+			return answer.isDone();
+		}
+
+		public Boolean get() throws InterruptedException, ExecutionException
+		{
+			return answer.get()[0];
+		}
+
+		public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			return answer.get(timeout, unit)[0];
+		}
 	}
 }
\ No newline at end of file
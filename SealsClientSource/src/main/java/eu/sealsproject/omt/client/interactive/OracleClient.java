@@ -0,0 +1,374 @@
+package eu.sealsproject.omt.client.interactive;
+
+import eu.sealsproject.omt.client.HashAlignment;
+import eu.sealsproject.omt.client.Relation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * A connection to the Oracle of a Client running in another process (see
+ * the --oracle-port option of the Client). The connection is thread-safe,
+ * and requests are pipelined: submit sends a request without waiting for
+ * the replies to the previous ones, which are read in the background.
+ * The static Oracle methods use an OracleClient automatically when the
+ * "seals.oracle" system property (or the SEALS_ORACLE environment variable)
+ * gives the address of the server, as it does in matcher worker processes.
+ *
+ * @author Daniel Faria
+ */
+
+public class OracleClient
+{
+	private static final Relation[] RELATIONS = Relation.values();
+	private Socket socket;
+	private DataOutputStream out;
+	private DataInputStream in;
+	//The URIs sent on the connection, by index
+	private HashMap<String,Integer> uris;
+	//The test case whose session is queried
+	private String task;
+	//The requests waiting for a reply, in the order in which they were sent
+	private LinkedBlockingQueue<Reply<?>> pending;
+	private IOException failure;
+	//Reads the replies in the background
+	private Thread reader;
+
+	/**
+	 * Connects to an Oracle server
+	 * @param address: the address of the server, in the form host:port
+	 * @throws IOException if the connection fails
+	 */
+	public OracleClient(String address) throws IOException
+	{
+		this(address.substring(0, address.lastIndexOf(':')),
+				Integer.parseInt(address.substring(address.lastIndexOf(':') + 1)));
+	}
+
+	/**
+	 * Connects to an Oracle server
+	 * @param host: the host of the server
+	 * @param port: the port of the server
+	 * @throws IOException if the connection fails
+	 */
+	public OracleClient(String host, int port) throws IOException
+	{
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		out.writeInt(OracleServer.MAGIC);
+		out.flush();
+		if(in.readInt() != OracleServer.MAGIC)
+		{
+			socket.close();
+			throw new IOException("Not an Oracle server: " + host + ":" + port);
+		}
+		uris = new HashMap<String,Integer>();
+		task = "";
+		pending = new LinkedBlockingQueue<Reply<?>>();
+		reader = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				read();
+			}
+		}, "oracle-client");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Selects the test case whose Oracle session is queried by the following
+	 * requests (by default, the only active session of the server)
+	 * @param id: the identifier of the test case ("" for the only active session)
+	 * @throws IOException if the connection failed
+	 */
+	public synchronized void setTask(String id) throws IOException
+	{
+		if(id.equals(task))
+			return;
+		checkOpen();
+		out.writeByte(OracleServer.TASK);
+		out.writeUTF(id);
+		task = id;
+	}
+
+	/**
+	 * Checks whether a given mapping is correct
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param rel: the mapping Relation
+	 * @return whether the mapping is correct
+	 * @throws IOException if the connection failed
+	 */
+	public boolean check(String uri1, String uri2, Relation rel) throws IOException
+	{
+		return checkAll(Collections.singletonList(new Mapping(uri1, uri2, rel)))[0];
+	}
+
+	/**
+	 * Checks whether each of a batch of Mappings is correct (see Oracle.checkAll)
+	 * @param maps: the Mappings to check
+	 * @return whether each mapping is correct, in the iteration order of maps
+	 * @throws IOException if the connection failed
+	 */
+	public boolean[] checkAll(Collection<Mapping> maps) throws IOException
+	{
+		return await(submit(maps));
+	}
+
+	/**
+	 * Checks which of a set of conflicting Mappings are correct (see Oracle.check(Set))
+	 * @param maps: the set of Mappings to check
+	 * @return the subset of mappings that are correct
+	 * @throws IOException if the connection failed
+	 */
+	public Set<Mapping> check(Set<Mapping> maps) throws IOException
+	{
+		List<Mapping> list = new ArrayList<Mapping>(maps);
+		boolean[] answers = await(send(OracleServer.CHECK_GROUP, list, new Answers()));
+		Set<Mapping> correct = new HashSet<Mapping>();
+		for(int i = 0; i < answers.length; i++)
+			if(answers[i])
+				correct.add(list.get(i));
+		return correct;
+	}
+
+	/**
+	 * Sends a batch of Mappings to check without waiting for the answer, so
+	 * that further requests can be sent in the meantime
+	 * @param maps: the Mappings to check
+	 * @return the future answer, as in checkAll
+	 * @throws IOException if the connection failed
+	 */
+	public Future<boolean[]> submit(Collection<Mapping> maps) throws IOException
+	{
+		return send(OracleServer.CHECK, maps, new Answers());
+	}
+
+	/**
+	 * @return the reference alignment according to the Oracle of the
+	 * current test case (see Oracle.getOracleReference)
+	 * @throws IOException if the connection failed
+	 */
+	public HashAlignment getOracleReference() throws IOException
+	{
+		return await(send(OracleServer.REFERENCE, null, new Reply<HashAlignment>()
+		{
+			@Override
+			HashAlignment read(DataInputStream in) throws IOException
+			{
+				HashAlignment a = new HashAlignment();
+				for(int n = in.readInt(); n > 0; n--)
+					a.add(in.readUTF(), in.readUTF(), RELATIONS[in.readByte()]);
+				return a;
+			}
+		}));
+	}
+
+	/**
+	 * @return whether the current test case is interactive
+	 * @throws IOException if the connection failed
+	 */
+	public boolean isInteractive() throws IOException
+	{
+		return await(send(OracleServer.INTERACTIVE, null, new Reply<Boolean>()
+		{
+			@Override
+			Boolean read(DataInputStream in) throws IOException
+			{
+				return in.readBoolean();
+			}
+		}));
+	}
+
+	/**
+	 * @return whether the connection is closed (or failed)
+	 */
+	public synchronized boolean isClosed()
+	{
+		return failure != null;
+	}
+
+	/**
+	 * Closes the connection; the requests still waiting for a reply fail
+	 */
+	public void close()
+	{
+		synchronized(this)
+		{
+			if(failure == null)
+				failure = new IOException("connection closed");
+		}
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+			//Nothing to do
+		}
+		reader.interrupt();
+	}
+
+	//Sends a request, queuing its reply to be read in the background
+	private synchronized <T> Reply<T> send(byte op, Collection<Mapping> maps, Reply<T> reply) throws IOException
+	{
+		checkOpen();
+		try
+		{
+			out.writeByte(op);
+			if(maps != null)
+			{
+				out.writeInt(maps.size());
+				for(Mapping m : maps)
+				{
+					writeUri(m.getSourceURI());
+					writeUri(m.getTargetURI());
+					out.writeByte(m.getRelation().ordinal());
+				}
+			}
+			pending.add(reply);
+			out.flush();
+		}
+		catch(IOException e)
+		{
+			close();
+			throw e;
+		}
+		return reply;
+	}
+
+	private void writeUri(String uri) throws IOException
+	{
+		Integer index = uris.get(uri);
+		if(index != null)
+			out.writeInt(index);
+		else
+		{
+			out.writeInt(-1);
+			out.writeUTF(uri);
+			uris.put(uri, uris.size());
+		}
+	}
+
+	private void checkOpen() throws IOException
+	{
+		if(failure != null)
+			throw new IOException("Oracle connection closed: " + failure.getMessage());
+	}
+
+	//Reads the replies in the order of the requests, until the connection is closed
+	private void read()
+	{
+		IOException error;
+		Reply<?> reply = null;
+		try
+		{
+			while(true)
+			{
+				reply = pending.take();
+				reply.receive(in);
+				reply = null;
+			}
+		}
+		catch(IOException e)
+		{
+			error = e;
+		}
+		catch(InterruptedException e)
+		{
+			error = new IOException("connection closed");
+		}
+		synchronized(this)
+		{
+			if(failure == null)
+				failure = error;
+			if(reply != null)
+				reply.fail(error);
+			while((reply = pending.poll()) != null)
+				reply.fail(error);
+		}
+		close();
+	}
+
+	//Waits for the reply to a request
+	private static <T> T await(Future<T> reply) throws IOException
+	{
+		try
+		{
+			return reply.get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	//The future reply to a request, completed by the reader thread
+	private abstract static class Reply<T> extends FutureTask<T>
+	{
+		Reply()
+		{
+			super(new Callable<T>()
+			{
+				public T call()
+				{
+					throw new IllegalStateException("Oracle replies are received, not computed");
+				}
+			});
+		}
+
+		abstract T read(DataInputStream in) throws IOException;
+
+		void receive(DataInputStream in) throws IOException
+		{
+			set(read(in));
+		}
+
+		void fail(IOException e)
+		{
+			setException(e);
+		}
+	}
+
+	//The reply to a check request
+	private static class Answers extends Reply<boolean[]>
+	{
+		@Override
+		boolean[] read(DataInputStream in) throws IOException
+		{
+			boolean[] answers = new boolean[in.readInt()];
+			byte[] bits = new byte[(answers.length + 7) / 8];
+			in.readFully(bits);
+			for(int i = 0; i < answers.length; i++)
+				answers[i] = (bits[i >> 3] & (1 << (i & 7))) != 0;
+			return answers;
+		}
+	}
+}
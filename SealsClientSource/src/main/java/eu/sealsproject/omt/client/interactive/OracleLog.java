@@ -0,0 +1,377 @@
+package eu.sealsproject.omt.client.interactive;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the logs and statistics of the Oracle for a matching suite
+ * (interactive_query_log.txt, interactive_results.txt and optionally
+ * interactive_request_intervals.txt) as the queries are answered. The
+ * records are passed to a background thread through a bounded queue (so
+ * that a query only waits for the disk if the thread falls behind) and
+ * written in batches. While a task runs, its records are written to
+ * temporary files, which are appended to the logs when it ends, so that the
+ * records of each task are together in the logs even when several tasks run
+ * at a time.
+ *
+ * @author Daniel Faria
+ */
+
+class OracleLog
+{
+	private static final int CAPACITY = 8192;
+	private static final int BATCH = 1024;
+	//Types of records
+	private static final int QUERY = 0;
+	private static final int INTERVAL = 1;
+	private static final int END = 2;
+	private static final int CLOSE = 3;
+	private File folder;
+	private Log queryLog;
+	//The log of request intervals (or null if they aren't logged)
+	private Log timeLog;
+	private Log results;
+	private BlockingQueue<Record> queue;
+	private Thread writer;
+
+	/**
+	 * Creates the logs in the given folder (replacing existing logs)
+	 * and starts writing them in the background
+	 * @param folder: the folder of the logs
+	 * @param header: the header line of the results file
+	 * @param intervals: whether to log each request interval
+	 * @throws IOException if the logs can't be created
+	 */
+	OracleLog(File folder, String header, boolean intervals) throws IOException
+	{
+		this.folder = folder;
+		queryLog = open(new File(folder, "interactive_query_log.txt"));
+		File f = new File(folder, "interactive_request_intervals.txt");
+		if(intervals)
+			timeLog = open(f);
+		else if(f.exists())
+			f.delete();
+		results = open(new File(folder, "interactive_results.txt"));
+		results.write(header);
+		results.flush();
+		queue = new ArrayBlockingQueue<Record>(CAPACITY);
+		writer = new Thread(new Runnable()
+		{
+			public void run()
+			{
+				write();
+			}
+		}, "oracle-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Starts the log of a matching task
+	 * @param id: the identifier of the test case
+	 * @return the log of the task
+	 */
+	Task start(String id)
+	{
+		return new Task(id);
+	}
+
+	/**
+	 * Logs an answered query
+	 * @param t: the task
+	 * @param line: the query and its classification (TP, FP, TN or FN)
+	 */
+	void query(Task t, String line)
+	{
+		enqueue(new Record(QUERY, t, line));
+	}
+
+	/**
+	 * @return whether each request interval is logged
+	 */
+	boolean logsIntervals()
+	{
+		return timeLog != null;
+	}
+
+	/**
+	 * Logs the time interval between two requests
+	 * @param t: the task
+	 * @param interval: the interval in milliseconds
+	 */
+	void interval(Task t, long interval)
+	{
+		enqueue(new Record(INTERVAL, t, Long.toString(interval)));
+	}
+
+	/**
+	 * Ends the log of a task, appending it to the logs
+	 * @param t: the task
+	 * @param line: the results line of the task
+	 */
+	void end(Task t, String line)
+	{
+		enqueue(new Record(END, t, line));
+	}
+
+	/**
+	 * Writes the last results line, then waits for all the records
+	 * to be written and closes the logs
+	 * @param line: the results line of the suite
+	 */
+	void close(String line)
+	{
+		enqueue(new Record(CLOSE, null, line));
+		boolean interrupted = false;
+		while(writer.isAlive())
+		{
+			try
+			{
+				writer.join();
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	//Queues a record, waiting for space in the queue if necessary (without
+	//being interrupted, so that no record is lost), unless the logs are
+	//already closed
+	private void enqueue(Record r)
+	{
+		boolean interrupted = false;
+		while(writer.isAlive())
+		{
+			try
+			{
+				if(queue.offer(r, 100, TimeUnit.MILLISECONDS))
+					break;
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	//Writes the queued records in batches until the logs are closed
+	private void write()
+	{
+		List<Record> batch = new ArrayList<Record>(BATCH);
+		boolean closed = false;
+		while(!closed)
+		{
+			try
+			{
+				batch.add(queue.take());
+			}
+			catch(InterruptedException e)
+			{
+				continue;
+			}
+			queue.drainTo(batch, BATCH - 1);
+			for(Record r : batch)
+			{
+				//The logs are closed even if writing the last record fails,
+				//and nothing is written after them
+				closed = r.type == CLOSE;
+				try
+				{
+					write(r);
+				}
+				catch(IOException e)
+				{
+					System.err.println("Error writing Oracle log file: " + e.getMessage());
+					e.printStackTrace();
+				}
+				if(closed)
+					break;
+			}
+			batch.clear();
+			if(closed)
+				break;
+			try
+			{
+				queryLog.flush();
+				if(timeLog != null)
+					timeLog.flush();
+				results.flush();
+			}
+			catch(IOException e)
+			{
+				System.err.println("Error writing Oracle log file: " + e.getMessage());
+				e.printStackTrace();
+			}
+		}
+	}
+
+	//Writes a record (closing the logs if it is the last one)
+	private void write(Record r) throws IOException
+	{
+		Task t = r.task;
+		if(r.type == CLOSE)
+		{
+			try
+			{
+				results.write(r.line + "\n");
+			}
+			finally
+			{
+				close(queryLog);
+				if(timeLog != null)
+					close(timeLog);
+				close(results);
+			}
+			return;
+		}
+		//Records that arrive after the end of their task are dropped
+		if(t.ended)
+			return;
+		if(r.type == QUERY)
+		{
+			if(t.queries == null)
+				t.queries = spool(t, "queries");
+			t.queries.write(r.line + "\n");
+		}
+		else if(r.type == INTERVAL)
+		{
+			if(t.intervals == null)
+				t.intervals = spool(t, "intervals");
+			t.intervals.write(r.line + "\n");
+		}
+		else if(r.type == END)
+		{
+			t.ended = true;
+			queryLog.write(t.id + "\n");
+			append(t.queries, t.queryFile, queryLog);
+			if(timeLog != null)
+			{
+				timeLog.write(t.id + "\n");
+				append(t.intervals, t.intervalFile, timeLog);
+			}
+			results.write(r.line + "\n");
+		}
+	}
+
+	//Closes a log, reporting (rather than throwing) an error
+	private static void close(Log log)
+	{
+		try
+		{
+			log.close();
+		}
+		catch(IOException e)
+		{
+			System.err.println("Error closing Oracle log file: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	//Opens the temporary file of a task
+	private Writer spool(Task t, String type) throws IOException
+	{
+		File f = File.createTempFile(".oracle-" + type + "-", ".tmp", folder);
+		f.deleteOnExit();
+		if(type.equals("queries"))
+			t.queryFile = f;
+		else
+			t.intervalFile = f;
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"), 1 << 16);
+	}
+
+	//Appends the temporary file of a task to a log, then deletes it
+	private static void append(Writer spool, File f, Log log) throws IOException
+	{
+		if(spool == null)
+			return;
+		spool.close();
+		log.flush();
+		FileInputStream in = new FileInputStream(f);
+		try
+		{
+			FileChannel from = in.getChannel();
+			FileChannel to = log.channel();
+			long size = from.size();
+			for(long done = 0; done < size; )
+				done += from.transferTo(done, size - done, to);
+		}
+		finally
+		{
+			in.close();
+			f.delete();
+		}
+	}
+
+	private static Log open(File f) throws IOException
+	{
+		if(f.exists())
+			f.delete();
+		return new Log(new FileOutputStream(f, true));
+	}
+
+	//A log file, whose channel is used to append the temporary files
+	private static class Log extends BufferedWriter
+	{
+		private FileOutputStream out;
+
+		Log(FileOutputStream out) throws IOException
+		{
+			super(new OutputStreamWriter(out, "UTF-8"), 1 << 16);
+			this.out = out;
+		}
+
+		FileChannel channel()
+		{
+			return out.getChannel();
+		}
+	}
+
+	/**
+	 * The log of a matching task (accessed only by the writer thread)
+	 */
+	static class Task
+	{
+		private final String id;
+		private Writer queries;
+		private File queryFile;
+		private Writer intervals;
+		private File intervalFile;
+		private boolean ended;
+
+		private Task(String id)
+		{
+			this.id = id;
+		}
+	}
+
+	private static class Record
+	{
+		private final int type;
+		private final Task task;
+		private final String line;
+
+		Record(int type, Task task, String line)
+		{
+			this.type = type;
+			this.task = task;
+			this.line = line;
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package eu.sealsproject.omt.client.interactive;
+
+import eu.sealsproject.omt.client.HashAlignment;
+import eu.sealsproject.omt.client.MappingVisitor;
+import eu.sealsproject.omt.client.Relation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Serves the Oracle on a local socket, so that it can be queried by matchers
+ * running in other processes (through an OracleClient). Each connection is
+ * handled by its own thread, and its requests are answered in the order in
+ * which they arrive, so a client can send several requests (pipelined)
+ * before reading the replies. Replies are only flushed when there are no
+ * more pending requests on the connection.
+ * The wire format is binary (DataInput/DataOutput): after the client sends
+ * MAGIC and the server echoes it, each request is an operation byte followed
+ * by its arguments:
+ * - TASK <id: UTF>: selects the session of the given test case ("" for the
+ *   only active session); no reply
+ * - CHECK <n: int> <n mappings>: reply <n: int> <ceil(n/8) bytes of answers>
+ * - CHECK_GROUP <n: int> <n mappings>: as CHECK, counted as a group of
+ *   conflicting mappings (see Oracle.check(Set))
+ * - REFERENCE: reply <n: int> <n (source: UTF, target: UTF, relation
+ *   ordinal: byte)> (the Oracle's reference alignment)
+ * - INTERACTIVE: reply <boolean>
+ * A mapping is <source: uri> <target: uri> <relation ordinal: byte>, where
+ * each uri is the int index of a URI sent before on the connection, or -1
+ * followed by the URI (UTF), which takes the next index.
+ * A request that breaks the format (an unknown operation, a batch of more
+ * than MAX_BATCH mappings, or an invalid relation or URI index) is a protocol
+ * error, which is reported and closes the connection.
+ *
+ * @author Daniel Faria
+ */
+
+class OracleServer
+{
+	static final int MAGIC = 0x4F524331;
+	static final byte TASK = 1;
+	static final byte CHECK = 2;
+	static final byte CHECK_GROUP = 3;
+	static final byte REFERENCE = 4;
+	static final byte INTERACTIVE = 5;
+	//The largest batch of mappings in a request
+	static final int MAX_BATCH = 1 << 20;
+	private static final Relation[] RELATIONS = Relation.values();
+	private ServerSocket socket;
+	private ExecutorService connections;
+
+	/**
+	 * Starts an OracleServer on the loopback interface
+	 * @param port: the port to listen on (0 for any free port)
+	 * @throws IOException if the port can't be bound
+	 */
+	OracleServer(int port) throws IOException
+	{
+		socket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		connections = Executors.newCachedThreadPool(new ThreadFactory()
+		{
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "oracle-server");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		connections.execute(new Runnable()
+		{
+			public void run()
+			{
+				accept();
+			}
+		});
+	}
+
+	/**
+	 * @return the address of the server, in the form host:port
+	 */
+	String getAddress()
+	{
+		return socket.getInetAddress().getHostAddress() + ":" + socket.getLocalPort();
+	}
+
+	/**
+	 * Stops the server, closing all its connections
+	 */
+	void stop()
+	{
+		try
+		{
+			socket.close();
+		}
+		catch(IOException e)
+		{
+			//Nothing to do
+		}
+		connections.shutdownNow();
+	}
+
+	//Accepts connections until the server is stopped
+	private void accept()
+	{
+		while(!socket.isClosed())
+		{
+			try
+			{
+				final Socket s = socket.accept();
+				connections.execute(new Runnable()
+				{
+					public void run()
+					{
+						serve(s);
+					}
+				});
+			}
+			catch(IOException e)
+			{
+				if(!socket.isClosed())
+					System.err.println("Oracle server error: " + e.getMessage());
+			}
+		}
+	}
+
+	//Answers the requests of a connection until it is closed
+	private void serve(Socket s)
+	{
+		try
+		{
+			s.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			if(in.readInt() != MAGIC)
+				return;
+			out.writeInt(MAGIC);
+			out.flush();
+			//The URIs received on the connection, by index
+			Vector<String> uris = new Vector<String>();
+			String task = "";
+			while(true)
+			{
+				byte op = in.readByte();
+				if(op == TASK)
+					task = in.readUTF();
+				else if(op == CHECK || op == CHECK_GROUP)
+				{
+					int n = in.readInt();
+					if(n < 0 || n > MAX_BATCH)
+						throw new ProtocolException("Invalid number of mappings: " + n);
+					Mapping[] maps = new Mapping[n];
+					for(int i = 0; i < n; i++)
+						maps[i] = new Mapping(readUri(in, uris), readUri(in, uris), readRelation(in));
+					writeAnswers(out, check(Oracle.session(task), maps, op == CHECK_GROUP));
+				}
+				else if(op == REFERENCE)
+				{
+					OracleSession session = Oracle.session(task);
+					writeAlignment(out, session == null ? new HashAlignment() : session.getOracleReference());
+				}
+				else if(op == INTERACTIVE)
+					out.writeBoolean(Oracle.session(task) != null);
+				else
+					throw new ProtocolException("Unknown Oracle request: " + op);
+				//Reply to all pipelined requests at once
+				if(in.available() == 0)
+					out.flush();
+			}
+		}
+		catch(EOFException e)
+		{
+			//The client closed the connection
+		}
+		catch(IOException e)
+		{
+			System.err.println("Oracle server connection error: " + e.getMessage());
+		}
+		finally
+		{
+			try
+			{
+				s.close();
+			}
+			catch(IOException e)
+			{
+				//Nothing to do
+			}
+		}
+	}
+
+	//Checks the mappings in the given session (all are incorrect if there is no session)
+	private static boolean[] check(OracleSession session, Mapping[] maps, boolean group)
+	{
+		boolean[] correct = new boolean[maps.length];
+		if(session == null)
+			return correct;
+		if(!group)
+			return session.checkAll(Arrays.asList(maps));
+		Set<Mapping> set = new LinkedHashSet<Mapping>();
+		for(Mapping m : maps)
+			set.add(m);
+		Set<Mapping> positive = session.check(set);
+		for(int i = 0; i < maps.length; i++)
+			correct[i] = positive.contains(maps[i]);
+		return correct;
+	}
+
+	private static String readUri(DataInputStream in, Vector<String> uris) throws IOException
+	{
+		int index = in.readInt();
+		if(index > -1 && index < uris.size())
+			return uris.get(index);
+		if(index != -1)
+			throw new ProtocolException("Invalid URI index: " + index);
+		String uri = in.readUTF();
+		uris.add(uri);
+		return uri;
+	}
+
+	private static Relation readRelation(DataInputStream in) throws IOException
+	{
+		byte r = in.readByte();
+		if(r < 0 || r >= RELATIONS.length)
+			throw new ProtocolException("Invalid relation: " + r);
+		return RELATIONS[r];
+	}
+
+	private static void writeAnswers(DataOutputStream out, boolean[] answers) throws IOException
+	{
+		out.writeInt(answers.length);
+		byte[] bits = new byte[(answers.length + 7) / 8];
+		for(int i = 0; i < answers.length; i++)
+			if(answers[i])
+				bits[i >> 3] |= 1 << (i & 7);
+		out.write(bits);
+	}
+
+	//Writes an alignment as a list of mappings
+	private static void writeAlignment(DataOutputStream out, HashAlignment a) throws IOException
+	{
+		final Vector<Mapping> maps = new Vector<Mapping>();
+		a.forEachMapping(new MappingVisitor()
+		{
+			@Override
+			public void visit(String source, String target, Relation r)
+			{
+				maps.add(new Mapping(source, target, r));
+			}
+		});
+		out.writeInt(maps.size());
+		for(Mapping m : maps)
+		{
+			out.writeUTF(m.getSourceURI());
+			out.writeUTF(m.getTargetURI());
+			out.writeByte(m.getRelation().ordinal());
+		}
+	}
+}
@@ -0,0 +1,532 @@
+package eu.sealsproject.omt.client.interactive;
+
+import eu.sealsproject.omt.client.AbstractAlignment;
+import eu.sealsproject.omt.client.HashAlignment;
+import eu.sealsproject.omt.client.MappingVisitor;
+import eu.sealsproject.omt.client.Relation;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The state of the Oracle for a single matching task: the reference alignment,
+ * the answers given so far and the request statistics. A session can be
+ * queried concurrently by several threads of the matching tool, and several
+ * sessions (one per task) can be active at the same time.
+ * @author Daniel Faria
+ */
+public class OracleSession
+{
+	private static final long NONE = Long.MIN_VALUE;
+	private static final String[] CLASSES = {"TP", "FP", "TN", "FN"};
+	private final AbstractAlignment refAlign;
+	private final String testCaseId;
+	private final double error;
+	//The seed of the simulated errors
+	private final long seed;
+	//The answers given, by query (each query is answered once, and the
+	//same answer is given if it is repeated)
+	private final ConcurrentHashMap<Query,Answer> answers;
+	//The log of the session (or null if it isn't logged)
+	private final OracleLog log;
+	private final OracleLog.Task logTask;
+	//Time of the previous interaction (System.nanoTime), or NONE
+	private final AtomicLong previousTime;
+	//The time intervals between interactions
+	private final LatencyHistogram intervals;
+	//Number of requests (with groups of related mappings counted once)
+	private final AtomicInteger count;
+	//Classification of the answers (counted as they are given):
+	//{True Positives, False Positives, True Negatives, False Negatives}
+	private final AtomicIntegerArray classification;
+	//The time the simulated user takes to answer (or null if answers are immediate)
+	private final LatencyModel latency;
+	//Total time taken by the simulated user to answer, and time the matcher
+	//spent waiting for the answers, in microseconds
+	private final AtomicLong userTime;
+	private final AtomicLong idleTime;
+	private volatile boolean active;
+
+	OracleSession(AbstractAlignment referenceAlignment, String id, double e, long s, OracleLog l, LatencyModel m)
+	{
+		refAlign = referenceAlignment;
+		testCaseId = id;
+		error = e;
+		seed = s;
+		answers = new ConcurrentHashMap<Query,Answer>();
+		log = l;
+		logTask = l == null ? null : l.start(id);
+		previousTime = new AtomicLong(NONE);
+		intervals = new LatencyHistogram();
+		count = new AtomicInteger(0);
+		classification = new AtomicIntegerArray(4);
+		latency = m;
+		userTime = new AtomicLong(0);
+		idleTime = new AtomicLong(0);
+		active = true;
+	}
+
+	/**
+	 * Checks whether a given mapping is correct
+	 * @param uri1: the URI of the source ontology entity
+	 * @param uri2: the URI of the target ontology entity
+	 * @param rel: the mapping Relation
+	 * @return whether the mapping is correct
+	 */
+	public boolean check(String uri1, String uri2, Relation rel)
+	{
+		if(!active)
+			return false;
+		interact(1);
+		boolean correct = answer(uri1, uri2, rel);
+		//Wait for the simulated user to answer
+		await(delay(uri1, uri2, rel));
+		return correct;
+	}
+
+	/**
+	 * Checks whether a given mapping is correct without waiting for the
+	 * answer, which is given after the time the simulated user takes to
+	 * answer (immediately if there is no latency model), so that the
+	 * matcher can do other work in the meantime. The time the matcher
+	 * spends waiting in get() counts as idle time.
+	 * @param m: the Mapping to check
+	 * @return the future answer: whether the mapping is correct
+	 */
+	public Future<Boolean> checkAsync(Mapping m)
+	{
+		if(!active)
+			return completed(false);
+		interact(1);
+		final boolean correct = answer(m.getSourceURI(), m.getTargetURI(), m.getRelation());
+		long delay = delay(m.getSourceURI(), m.getTargetURI(), m.getRelation());
+		if(delay == 0)
+			return completed(correct);
+		return new PendingAnswer(Oracle.scheduler().schedule(new Callable<Boolean>()
+		{
+			public Boolean call()
+			{
+				return correct;
+			}
+		}, delay, TimeUnit.MICROSECONDS));
+	}
+
+	/**
+	 * Checks whether each of a batch of mappings is correct; the batch is
+	 * a single interaction (i.e., a single request time interval), but
+	 * each mapping in it counts as a request
+	 * @param maps: the Mappings to check
+	 * @return whether each mapping is correct, in the iteration order of maps
+	 */
+	public boolean[] checkAll(Collection<Mapping> maps)
+	{
+		boolean[] correct = new boolean[maps.size()];
+		if(!active || correct.length == 0)
+			return correct;
+		interact(correct.length);
+		int i = 0;
+		long delay = 0;
+		for(Mapping m : maps)
+		{
+			correct[i++] = answer(m.getSourceURI(), m.getTargetURI(), m.getRelation());
+			delay += delay(m.getSourceURI(), m.getTargetURI(), m.getRelation());
+		}
+		//Wait for the simulated user to answer all the questions
+		await(delay);
+		return correct;
+	}
+
+	/**
+	 * Checks which of a set of conflicting Mappings are correct
+	 * @param maps: the set of Mappings to check
+	 * @return the subset of mappings that are correct
+	 */
+	public Set<Mapping> check(Set<Mapping> maps)
+	{
+		//Check the mappings in a single batch
+		Set<Mapping> correct = new HashSet<Mapping>();
+		boolean[] classification = checkAll(maps);
+		int k = 0;
+		for(Mapping m : maps)
+			if(classification[k++])
+				correct.add(m);
+		//If a set of 2 or 3 conflicting mappings was given
+		//reduce the count so that they are counted as a
+		//group rather than as individual mappings
+		if(maps.size() > 1 && maps.size() < 4)
+		{
+			int related = 0;
+			Vector<Mapping> mapList = new Vector<Mapping>(maps);
+			for(int i = 0; i < mapList.size()-1 && related < 2; i++)
+			{
+				for(int j = i+1; j < mapList.size(); j++)
+				{
+					if(mapList.get(i).getSourceURI().equals(mapList.get(j).getSourceURI()) ||
+							mapList.get(i).getTargetURI().equals(mapList.get(j).getTargetURI()))
+						related++;
+				}
+			}
+			count.addAndGet(-related);
+			Oracle.countRequest(-related);
+		}
+		//Return the set of correct mappings
+		return correct;
+	}
+
+	/**
+	 * @return the number of requests made in this session
+	 */
+	public int getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * @return the reference alignment according to the Oracle
+	 * (i.e., with false positives and negatives introduced
+	 * according to the error rate).
+	 */
+	public HashAlignment getOracleReference()
+	{
+		//Initiate as a copy of the true reference
+		final HashAlignment oracleAlign = new HashAlignment(refAlign);
+		//Add false positives
+		getAnswers(true).forEachMapping(new MappingVisitor()
+		{
+			@Override
+			public void visit(String source, String target, Relation r)
+			{
+				if(!refAlign.contains(source, target, r))
+					oracleAlign.add(source, target, r);
+			}
+		});
+		//Remove false negatives
+		getAnswers(false).forEachMapping(new MappingVisitor()
+		{
+			@Override
+			public void visit(String source, String target, Relation r)
+			{
+				if(refAlign.contains(source, target, r))
+					oracleAlign.remove(source, target, r);
+			}
+		});
+		return oracleAlign;
+	}
+
+	/**
+	 * @return the identifier of the test case of this session
+	 */
+	public String getTestCaseId()
+	{
+		return testCaseId;
+	}
+
+	/**
+	 * @return whether the session is active (i.e., its task hasn't ended)
+	 */
+	public boolean isActive()
+	{
+		return active;
+	}
+
+	//Ends the session: further requests are answered with false
+	void end()
+	{
+		active = false;
+	}
+
+	//The classification of the answers given so far:
+	//{{True Positives, False Positives}, {True Negatives, False Negatives}}
+	int[][] getClassMatrix()
+	{
+		return new int[][]{{classification.get(0), classification.get(1)},
+				{classification.get(2), classification.get(3)}};
+	}
+
+	LatencyHistogram getIntervals()
+	{
+		return intervals;
+	}
+
+	//Total time taken by the simulated user to answer, in microseconds
+	long getUserTime()
+	{
+		return userTime.get();
+	}
+
+	//Time the matcher spent waiting for the simulated user, in microseconds
+	long getIdleTime()
+	{
+		return idleTime.get();
+	}
+
+	//A future that is already completed with the given answer
+	static Future<Boolean> completed(boolean answer)
+	{
+		FutureTask<Boolean> f = new FutureTask<Boolean>(new Runnable()
+		{
+			public void run()
+			{
+			}
+		}, answer);
+		f.run();
+		return f;
+	}
+
+	OracleLog getLog()
+	{
+		return log;
+	}
+
+	OracleLog.Task getLogTask()
+	{
+		return logTask;
+	}
+
+	AbstractAlignment getReference()
+	{
+		return refAlign;
+	}
+
+	//Records the time since the previous interaction and counts its requests
+	private void interact(int requests)
+	{
+		long time = System.nanoTime();
+		long previous = previousTime.getAndSet(time);
+		if(previous != NONE)
+		{
+			long micros = (time - previous) / 1000;
+			intervals.record(micros);
+			if(log != null && log.logsIntervals())
+				log.interval(logTask, micros / 1000);
+		}
+		count.addAndGet(requests);
+		Oracle.countRequest(requests);
+	}
+
+	//Samples the time the simulated user takes to answer a query (0 if there
+	//is no latency model), in microseconds
+	private long delay(String uri1, String uri2, Relation rel)
+	{
+		if(latency == null)
+			return 0;
+		Query q = new Query(uri1, uri2, rel);
+		long delay = latency.sample(q.uniform(seed ^ 0x5DEECE66DL), q.uniform(seed ^ 0x2545F4914F6CDD1DL));
+		userTime.addAndGet(delay);
+		return delay;
+	}
+
+	//Waits for the given time (the matcher is idle in the meantime)
+	private void await(long micros)
+	{
+		if(micros <= 0)
+			return;
+		long start = System.nanoTime();
+		try
+		{
+			TimeUnit.MICROSECONDS.sleep(micros);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			idleTime.addAndGet((System.nanoTime() - start) / 1000);
+		}
+	}
+
+	//Answers a query (once: if it is repeated, the same answer is given)
+	private boolean answer(String uri1, String uri2, Relation rel)
+	{
+		//If the query was already done, return the result
+		Query q = new Query(uri1, uri2, rel);
+		Answer a = answers.get(q);
+		if(a != null)
+			return a.correct;
+		//Otherwise, if the mapping between uri1 and uri2 is 'unknown' in the
+		//reference alignment return false by default, but do not store it or
+		//count it as a query (it will also not count in the evaluation)
+		boolean correct;
+		//Check if the query is present in the reference alignment
+		boolean inReference = refAlign.contains(uri1,uri2,rel);
+		boolean unknown = refAlign.contains(uri1, uri2, Relation.UNKNOWN);
+		if(unknown)
+			correct = false;
+		else
+		{
+			correct = inReference;
+			//Reverse the classification with probability given by the error
+			if(error > 0 && q.uniform(seed) < error)
+				correct = !correct;
+		}
+		//Store the request (unless another thread answered it in the meantime)
+		a = answers.putIfAbsent(q, new Answer(uri1, uri2, rel, correct));
+		if(a != null)
+			return a.correct;
+		//Classify the answer (answers to unknowns are true positives or negatives)
+		int c;
+		if(correct)
+			c = inReference || unknown ? 0 : 1;
+		else
+			c = inReference ? 3 : 2;
+		classification.incrementAndGet(c);
+		if(log != null)
+			log.query(logTask, uri1 + " " + rel.toString() + " " + uri2 + "\t" + CLASSES[c]);
+		return correct;
+	}
+
+	//The mappings answered as correct (or incorrect), in the direction in which they were asked
+	private HashAlignment getAnswers(boolean correct)
+	{
+		HashAlignment a = new HashAlignment();
+		for(Answer answer : answers.values())
+			if(answer.correct == correct)
+				a.add(answer.source, answer.target, answer.rel);
+		return a;
+	}
+
+	//A query, in the same form regardless of the direction in which it was
+	//asked (i.e., a mapping and its reverse are the same query)
+	private static final class Query
+	{
+		private final String source;
+		private final String target;
+		private final Relation rel;
+
+		Query(String uri1, String uri2, Relation r)
+		{
+			if(uri1.compareTo(uri2) <= 0)
+			{
+				source = uri1;
+				target = uri2;
+				rel = r;
+			}
+			else
+			{
+				source = uri2;
+				target = uri1;
+				rel = r.reverse();
+			}
+		}
+
+		//A number in [0,1) determined by the query and the seed (so that the
+		//same query always gets the same simulated error with the same seed)
+		double uniform(long seed)
+		{
+			long h = mix(seed + source.hashCode());
+			h = mix(h + target.hashCode());
+			h = mix(h + rel.ordinal());
+			return (h >>> 11) * 0x1.0p-53;
+		}
+
+		//The finalizer of the SplitMix64 generator
+		private static long mix(long h)
+		{
+			h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+			h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+			return h ^ (h >>> 31);
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Query))
+				return false;
+			Query q = (Query)o;
+			return source.equals(q.source) && target.equals(q.target) && rel == q.rel;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (source.hashCode() * 31 + target.hashCode()) * 31 + rel.hashCode();
+		}
+	}
+
+	//An answer that is pending on the simulated user, which measures the
+	//time the matcher spends waiting for it
+	private class PendingAnswer implements Future<Boolean>
+	{
+		private final Future<Boolean> answer;
+
+		PendingAnswer(Future<Boolean> f)
+		{
+			answer = f;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			return answer.cancel(mayInterruptIfRunning);
+		}
+
+		public boolean isCancelled()
+		{
+			return answer.isCancelled();
+		}
+
+		public boolean isDone()
+		{
+			return answer.isDone();
+		}
+
+		public Boolean get() throws InterruptedException, ExecutionException
+		{
+			if(answer.isDone())
+				return answer.get();
+			long start = System.nanoTime();
+			try
+			{
+				return answer.get();
+			}
+			finally
+			{
+				idleTime.addAndGet((System.nanoTime() - start) / 1000);
+			}
+		}
+
+		public Boolean get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			if(answer.isDone())
+				return answer.get();
+			long start = System.nanoTime();
+			try
+			{
+				return answer.get(timeout, unit);
+			}
+			finally
+			{
+				idleTime.addAndGet((System.nanoTime() - start) / 1000);
+			}
+		}
+	}
+
+	//An answer, with the query in the direction in which it was first asked
+	private static final class Answer
+	{
+		private final String source;
+		private final String target;
+		private final Relation rel;
+		private final boolean correct;
+
+		Answer(String uri1, String uri2, Relation r, boolean c)
+		{
+			source = uri1;
+			target = uri2;
+			rel = r;
+			correct = c;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package eu.sealsproject.omt.client;
+
+import java.util.Random;
+
+/**
+ * Compares the memory use and lookup time of the Alignment stores with those
+ * of the HashAlignment, on a random alignment with the given number of
+ * mappings (by default 1000000) between URIs of the length found in OAEI
+ * ontologies. The memory is the heap in use after the store is loaded, so
+ * neither the URI strings (which the benchmark keeps) nor the buffers of the
+ * OffHeapAlignment are included; the lookup time is
+ * the average of contains(source, target) over all the mapped pairs and as
+ * many unmapped ones. The traversal times are those of visiting all the
+ * mappings with forEachMapping and with the nested getSources, getTargets and
+ * getRelations calls it replaced. It is not a unit test, so it must be run directly:
+ * java -Xmx2g -cp &lt;test and main classes&gt; eu.sealsproject.omt.client.AlignmentBenchmark [mappings]
+ *
+ * @author Daniel Faria
+ */
+public class AlignmentBenchmark
+{
+	private static final int ROUNDS = 5;
+
+	public static void main(String[] args)
+	{
+		int mappings = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random random = new Random(42);
+		//The source and target URIs of the mapped pairs, and of as many unmapped pairs
+		String[] sources = new String[2 * mappings];
+		String[] targets = new String[2 * mappings];
+		for(int i = 0; i < sources.length; i++)
+		{
+			sources[i] = uri("source", random.nextInt(mappings));
+			targets[i] = uri("target", random.nextInt(mappings));
+		}
+		System.out.println(mappings + " mappings");
+		System.out.println(String.format("%-20s%12s%16s%10s%14s%22s", "Store", "Heap (MB)", "Lookup (ns)", "Hits",
+				"Nested (ms)", "forEachMapping (ms)"));
+		for(String store : new String[]{"HashAlignment", "CompactAlignment", "OffHeapAlignment", "FrozenAlignment"})
+		{
+			long before = usedMemory();
+			AbstractAlignment a = load(store, sources, targets, mappings);
+			long memory = usedMemory() - before;
+			//The first rounds warm up the JIT, so only the last one is timed
+			long time = 0;
+			int hits = 0;
+			for(int round = 0; round < ROUNDS; round++)
+			{
+				hits = 0;
+				long start = System.nanoTime();
+				for(int i = 0; i < sources.length; i++)
+					if(a.contains(sources[i], targets[i]))
+						hits++;
+				time = System.nanoTime() - start;
+			}
+			long nested = 0;
+			long visitor = 0;
+			for(int round = 0; round < ROUNDS; round++)
+			{
+				long start = System.nanoTime();
+				int n = nested(a);
+				nested = System.nanoTime() - start;
+				start = System.nanoTime();
+				if(visitor(a) != n)
+					throw new IllegalStateException(store + " visited a different number of mappings");
+				visitor = System.nanoTime() - start;
+			}
+			System.out.println(String.format("%-20s%12.1f%16.1f%10d%14.1f%22.1f", store, memory / 1048576.0,
+					time / (double)sources.length, hits, nested / 1e6, visitor / 1e6));
+			a = null;
+		}
+	}
+
+	//Loads the first mappings of the pairs into a new store
+	private static AbstractAlignment load(String store, String[] sources, String[] targets, int mappings)
+	{
+		AbstractAlignment a;
+		if(store.equals("CompactAlignment"))
+			a = new CompactAlignment();
+		else if(store.equals("OffHeapAlignment"))
+			a = new OffHeapAlignment();
+		else
+			a = new HashAlignment();
+		for(int i = 0; i < mappings; i++)
+			a.add(sources[i], targets[i], Relation.EQUIVALENCE, 1.0);
+		if(store.equals("FrozenAlignment"))
+			return a.freeze();
+		return a;
+	}
+
+	//Counts the mappings by looking up the targets and relations of each source
+	private static int nested(AbstractAlignment a)
+	{
+		int n = 0;
+		for(String source : a.getSources())
+			for(String target : a.getTargets(source))
+				n += a.getRelations(source, target).size();
+		return n;
+	}
+
+	//Counts the mappings by visiting them
+	private static int visitor(AbstractAlignment a)
+	{
+		final int[] n = new int[1];
+		a.forEachMapping(new MappingVisitor()
+		{
+			@Override
+			public void visit(String source, String target, Relation r)
+			{
+				n[0]++;
+			}
+		});
+		return n[0];
+	}
+
+	private static String uri(String ontology, int i)
+	{
+		return "http://oaei.ontologymatching.org/benchmark/" + ontology + ".owl#Entity_" + i;
+	}
+
+	//The heap in use after the garbage is collected
+	private static long usedMemory()
+	{
+		Runtime r = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++)
+		{
+			System.gc();
+			try
+			{
+				Thread.sleep(100);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		return r.totalMemory() - r.freeMemory();
+	}
+}
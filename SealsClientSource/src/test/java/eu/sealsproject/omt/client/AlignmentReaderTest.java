@@ -0,0 +1,100 @@
+package eu.sealsproject.omt.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+/**
+ * Checks the streaming reader on RDF Alignment fixtures: Cells with entities
+ * given by rdf:resource or by a nested rdf:about, with and without measures,
+ * and with relations given by label or by the names the Alignment API
+ * accepts; and that the inputs it can't read (an alignment in another format,
+ * an RDF document that isn't an alignment and an alignment with an unknown
+ * relation) are rejected, so that the Client parses them with the Alignment API.
+ *
+ * @author Daniel Faria
+ */
+public class AlignmentReaderTest
+{
+	@Test
+	public void testRead() throws IOException, XMLStreamException
+	{
+		HashAlignment a = read("/alignment.rdf");
+		assertEquals(6, a.size());
+		assertTrue(a.contains("http://cmt#Paper", "http://ekaw#Paper", Relation.EQUIVALENCE));
+		assertEquals(1.0, a.getConfidence("http://cmt#Paper", "http://ekaw#Paper"), 1e-6);
+		assertTrue(a.contains("http://cmt#Author", "http://ekaw#Paper_Author", Relation.SUBSUMES));
+		assertEquals(0.75, a.getConfidence("http://cmt#Author", "http://ekaw#Paper_Author"), 1e-6);
+		//Entities given by a nested rdf:about
+		assertTrue(a.contains("http://cmt#Review", "http://ekaw#Document", Relation.SUBSUMED_BY));
+		assertEquals(0.5, a.getConfidence("http://cmt#Review", "http://ekaw#Document"), 1e-6);
+		//Relations by name, and Cells without a measure
+		assertTrue(a.contains("http://cmt#Conference", "http://ekaw#Conference", Relation.EQUIVALENCE));
+		assertEquals(1.0, a.getConfidence("http://cmt#Conference", "http://ekaw#Conference"), 1e-6);
+		assertTrue(a.contains("http://cmt#Person", "http://ekaw#Person", Relation.EQUIVALENCE));
+		assertEquals(0.9, a.getConfidence("http://cmt#Person", "http://ekaw#Person"), 1e-6);
+		assertTrue(a.contains("http://cmt#Chairman", "http://ekaw#Person", Relation.SUBSUMED_BY));
+		//Every store reads the same mappings
+		CompactAlignment c = new CompactAlignment();
+		InputStream in = getClass().getResourceAsStream("/alignment.rdf");
+		AlignmentReader.read(in, c);
+		in.close();
+		assertEquals(a.evaluation(c)[0], c.size());
+	}
+
+	@Test
+	public void testFallback() throws IOException
+	{
+		for(String fixture : new String[]{"/alignment.txt", "/ontology.owl", "/alignment-incompatible.rdf"})
+		{
+			try
+			{
+				read(fixture);
+				fail(fixture + " was read as an RDF alignment");
+			}
+			catch(XMLStreamException e)
+			{
+				//The Client falls back on the Alignment API
+			}
+		}
+	}
+
+	@Test
+	public void testRelationNames()
+	{
+		assertEquals(Relation.EQUIVALENCE, Relation.parse("="));
+		assertEquals(Relation.EQUIVALENCE, Relation.parse("equivalence"));
+		assertEquals(Relation.EQUIVALENCE, Relation.parse("EquivRelation"));
+		assertEquals(Relation.SUBSUMES, Relation.parse(">"));
+		assertEquals(Relation.SUBSUMES, Relation.parse("Subsumes"));
+		assertEquals(Relation.SUBSUMED_BY, Relation.parse("<"));
+		assertEquals(Relation.SUBSUMED_BY, Relation.parse(" SubsumedBy "));
+		assertEquals(Relation.SUBSUMED_BY, Relation.parse("subsumed_by"));
+		assertEquals(Relation.UNKNOWN, Relation.parse("?"));
+		assertNull(Relation.parse("%"));
+		assertNull(Relation.parse(null));
+	}
+
+	private HashAlignment read(String fixture) throws IOException, XMLStreamException
+	{
+		HashAlignment a = new HashAlignment();
+		InputStream in = getClass().getResourceAsStream(fixture);
+		try
+		{
+			AlignmentReader.read(in, a);
+		}
+		finally
+		{
+			in.close();
+		}
+		return a;
+	}
+}
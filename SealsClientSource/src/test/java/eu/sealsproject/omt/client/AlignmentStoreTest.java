@@ -0,0 +1,292 @@
+package eu.sealsproject.omt.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compares each Alignment store with the HashAlignment on random sequences
+ * of operations: the mutable stores (CompactAlignment, with its own and with
+ * a shared dictionary, and OffHeapAlignment) go through the same additions
+ * and removals as a HashAlignment, and the read-only stores (FrozenAlignment
+ * and MappedAlignment) are built from it. The stores must then agree with it
+ * on every query and in the evaluation against each other, and their
+ * threshold curves must agree with the evaluation at each threshold (the
+ * lowest keeping every mapping) and break ties by the highest threshold.
+ * Few entities are used in most rounds, so that the same pairs are mapped in
+ * both directions and with several relations, and many in some, so that the
+ * tables grow.
+ *
+ * @author Daniel Faria
+ */
+public class AlignmentStoreTest
+{
+	private static final Relation[] RELATIONS = Relation.values();
+	private static final int ROUNDS = 300;
+
+	@Test
+	public void testMutableStores()
+	{
+		Random random = new Random(42);
+		for(int round = 0; round < ROUNDS; round++)
+		{
+			int entities = entities(random, round);
+			HashAlignment hash = new HashAlignment();
+			AbstractAlignment[] stores = {new CompactAlignment(), new CompactAlignment(new UriDictionary()), new OffHeapAlignment()};
+			change(random, entities, 4 * entities, hash, stores);
+			for(AbstractAlignment a : stores)
+				assertSame("round " + round, hash, a, entities);
+		}
+	}
+
+	@Test
+	public void testFrozenAlignment()
+	{
+		Random random = new Random(7);
+		for(int round = 0; round < ROUNDS; round++)
+		{
+			int entities = entities(random, round);
+			HashAlignment hash = new HashAlignment();
+			change(random, entities, 4 * entities, hash);
+			assertSame("round " + round, hash, hash.freeze(), entities);
+		}
+	}
+
+	@Test
+	public void testMappedAlignment() throws IOException
+	{
+		Random random = new Random(11);
+		File bin = File.createTempFile("alignment", ".bin");
+		try
+		{
+			for(int round = 0; round < ROUNDS; round++)
+			{
+				int entities = entities(random, round);
+				HashAlignment hash = new HashAlignment();
+				change(random, entities, 4 * entities, hash);
+				MappedAlignment.write(hash, bin);
+				assertSame("round " + round, hash, new MappedAlignment(bin), entities);
+			}
+		}
+		finally
+		{
+			bin.delete();
+		}
+	}
+
+	@Test
+	public void testCorruptMappedAlignment() throws IOException
+	{
+		File bin = File.createTempFile("alignment", ".bin");
+		try
+		{
+			HashAlignment hash = new HashAlignment();
+			change(new Random(5), 20, 80, hash);
+			//Negative and overflowing counts of entities, pairs and string bytes
+			int[][] headers = {{12, -1}, {16, -1}, {20, -1}, {8, -1}, {12, Integer.MAX_VALUE},
+					{16, Integer.MAX_VALUE}, {20, Integer.MAX_VALUE - 100}};
+			for(int[] header : headers)
+			{
+				MappedAlignment.write(hash, bin);
+				RandomAccessFile raf = new RandomAccessFile(bin, "rw");
+				raf.seek(header[0]);
+				raf.writeInt(header[1]);
+				raf.close();
+				try
+				{
+					new MappedAlignment(bin);
+					fail("Header field " + header[0] + " = " + header[1] + " was accepted");
+				}
+				catch(IOException e)
+				{
+					//Rejected before any section is read
+				}
+			}
+		}
+		finally
+		{
+			bin.delete();
+		}
+	}
+
+	@Test
+	public void testEvaluation() throws IOException
+	{
+		Random random = new Random(3);
+		File bin = File.createTempFile("alignment", ".bin");
+		try
+		{
+			for(int round = 0; round < ROUNDS; round++)
+			{
+				int entities = entities(random, round);
+				//The compact alignments of a test case share a dictionary
+				UriDictionary dictionary = new UriDictionary();
+				HashAlignment hashRef = new HashAlignment();
+				AbstractAlignment[] refs = {new CompactAlignment(dictionary), new CompactAlignment(), new OffHeapAlignment()};
+				change(random, entities, 2 * entities, hashRef, refs);
+				HashAlignment hashOut = new HashAlignment();
+				AbstractAlignment[] outs = {new CompactAlignment(dictionary), new CompactAlignment(), new OffHeapAlignment()};
+				change(random, entities, 2 * entities, hashOut, outs);
+				MappedAlignment.write(hashRef, bin);
+				List<AbstractAlignment> references = new ArrayList<AbstractAlignment>();
+				Collections.addAll(references, refs);
+				references.add(hashRef.freeze());
+				references.add(new MappedAlignment(bin));
+				int[] expected = hashRef.evaluation(hashOut);
+				for(AbstractAlignment ref : references)
+				{
+					assertArrayEquals("round " + round + ": " + name(ref) + " vs HashAlignment",
+							expected, ref.evaluation(hashOut));
+					for(AbstractAlignment out : outs)
+						assertArrayEquals("round " + round + ": " + name(ref) + " vs " + name(out),
+								expected, ref.evaluation(out));
+				}
+				for(AbstractAlignment out : outs)
+					assertArrayEquals("round " + round + ": HashAlignment vs " + name(out),
+							expected, hashRef.evaluation(out));
+				for(AbstractAlignment ref : references)
+					assertCurve("round " + round + ": " + name(ref), ref, hashOut, expected);
+			}
+		}
+		finally
+		{
+			bin.delete();
+		}
+	}
+
+	//Checks the threshold curve of an alignment against the evaluation of its
+	//mappings above each threshold, and its best threshold
+	private static void assertCurve(String message, AbstractAlignment reference, final HashAlignment out, int[] evaluation)
+	{
+		ThresholdCurve curve = reference.thresholdEvaluation(out);
+		if(out.size() == 0)
+		{
+			assertEquals(message + " thresholds", 0, curve.size());
+			assertEquals(message + " best", -1, curve.best());
+			return;
+		}
+		//The lowest threshold keeps every mapping
+		assertArrayEquals(message + " lowest threshold", evaluation, curve.getClassification(curve.size() - 1));
+		int best = -1;
+		double bestF = -1;
+		for(int i = 0; i < curve.size(); i++)
+		{
+			if(i > 0)
+				assertTrue(message + " threshold order", curve.getThreshold(i) < curve.getThreshold(i - 1));
+			final double threshold = curve.getThreshold(i);
+			final HashAlignment above = new HashAlignment();
+			out.forEachMapping(new MappingVisitor()
+			{
+				@Override
+				public void visit(String source, String target, Relation r)
+				{
+					double confidence = out.getConfidence(source, target);
+					if(confidence >= threshold)
+						above.add(source, target, r, confidence);
+				}
+			});
+			int[] c = reference.evaluation(above);
+			assertArrayEquals(message + " threshold " + threshold, c, curve.getClassification(i));
+			//Ties are broken by the highest threshold, which comes first
+			double f = c[0] == 0 ? 0 : 2.0 * c[0] / (2 * c[0] + c[1] + c[2]);
+			if(f > bestF)
+			{
+				best = i;
+				bestF = f;
+			}
+		}
+		assertEquals(message + " best", best, curve.best());
+	}
+
+	//Few entities in most rounds, and many in every tenth round
+	private static int entities(Random random, int round)
+	{
+		return round % 10 == 9 ? 500 + random.nextInt(1500) : 2 + random.nextInt(12);
+	}
+
+	//Applies the same random additions (with confidences) and removals to a
+	//HashAlignment and to the other alignments
+	private static void change(Random random, int entities, int operations, HashAlignment hash, AbstractAlignment... others)
+	{
+		AbstractAlignment[] alignments = new AbstractAlignment[others.length + 1];
+		alignments[0] = hash;
+		System.arraycopy(others, 0, alignments, 1, others.length);
+		for(int i = 0; i < operations; i++)
+		{
+			String source = uri(random.nextInt(entities));
+			String target = uri(random.nextInt(entities));
+			Relation r = RELATIONS[random.nextInt(RELATIONS.length)];
+			boolean remove = random.nextInt(4) == 0;
+			double confidence = random.nextInt(5) / 4.0;
+			for(AbstractAlignment a : alignments)
+			{
+				if(remove)
+					a.remove(source, target, r);
+				else
+					a.add(source, target, r, confidence);
+			}
+		}
+	}
+
+	//Checks that an alignment answers every query over the entities like the HashAlignment
+	private static void assertSame(String message, HashAlignment expected, AbstractAlignment a, int entities)
+	{
+		message += ": " + name(a);
+		assertEquals(message + " size", expected.size(), a.size());
+		assertEquals(message + " mappings", mappings(expected), mappings(a));
+		assertEquals(message + " mappings visited", a.size(), mappings(a).size());
+		for(int i = 0; i < Math.min(entities, 60); i++)
+		{
+			String source = uri(i);
+			for(int j = 0; j < Math.min(entities, 60); j++)
+			{
+				String target = uri(j);
+				String pair = message + " " + source + " " + target;
+				assertEquals(pair, expected.contains(source, target), a.contains(source, target));
+				assertEquals(pair, expected.getConfidence(source, target), a.getConfidence(source, target), 1e-6);
+				assertEquals(pair, expected.getRelations(source, target), a.getRelations(source, target));
+				for(Relation r : RELATIONS)
+					assertEquals(pair + " " + r, expected.contains(source, target, r), a.contains(source, target, r));
+			}
+		}
+		assertEquals(message + " sources", expected.getSources(), a.getSources());
+		assertEquals(message + " unmapped", -1.0, a.getConfidence(uri(-1), uri(0)), 0);
+	}
+
+	//The mappings visited by forEachMapping, sorted (duplicates are kept)
+	private static List<String> mappings(AbstractAlignment a)
+	{
+		final List<String> mappings = new ArrayList<String>();
+		a.forEachMapping(new MappingVisitor()
+		{
+			@Override
+			public void visit(String source, String target, Relation r)
+			{
+				mappings.add(source + " " + target + " " + r);
+			}
+		});
+		Collections.sort(mappings);
+		return mappings;
+	}
+
+	private static String uri(int i)
+	{
+		return "http://example.org/onto#e" + i;
+	}
+
+	private static String name(AbstractAlignment a)
+	{
+		return a.getClass().getSimpleName();
+	}
+}
@@ -1,9 +1,34 @@
 package eu.sealsproject.omt.client;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import eu.sealsproject.omt.client.interactive.LatencyModel;
+import eu.sealsproject.omt.client.interactive.Mapping;
+import eu.sealsproject.omt.client.interactive.Oracle;
+import eu.sealsproject.omt.client.interactive.OracleClient;
+import eu.sealsproject.omt.client.interactive.OracleSession;
 import eu.sealsproject.platform.res.tool.bundle.factory.PackageCreationException;
 import eu.sealsproject.platform.res.tool.bundle.loaders.ToolBridgeLoadingException;
 
@@ -27,5 +52,194 @@ public class ClientTest extends ToolBridgeTest {
 
 	}
 	
+	/**
+	 * The results of a suite must be written in the order of the suite, with the
+	 * same global results, however many test cases run at a time (and whichever
+	 * finish first), including the test cases whose task fails.
+	 */
+	@Test
+	public void testSuiteResultsOrder() throws IOException, InterruptedException {
+		List<String> sequential = runSuite(1);
+		assertEquals(41, sequential.size());
+		for (int i = 0; i < 40; i++)
+			assertEquals("tc" + i, sequential.get(i).split("\t")[0]);
+		assertEquals("Error: IllegalStateException", sequential.get(13).split("\t")[6]);
+		assertEquals("Global\t767\t", sequential.get(40).substring(0, 11));
+		for (int run = 0; run < 5; run++)
+			assertEquals(sequential, runSuite(8));
+	}
+
+	/**
+	 * A matcher in another process queries the Oracle of the Client through an
+	 * OracleClient, which sends its requests (from several threads) without
+	 * waiting for the replies; each reply must answer its own request.
+	 */
+	@Test
+	public void testOracleServerRoundTrip() throws Exception {
+		HashAlignment reference = new HashAlignment();
+		for (int i = 0; i < 50; i++)
+			reference.add("http://source#e" + i, "http://target#e" + i, Relation.EQUIVALENCE);
+		Oracle.startSuite(0.0, null, 0, false, null);
+		String address = Oracle.startServer(0);
+		OracleSession session = Oracle.startTask(reference, "tc");
+		final OracleClient client = new OracleClient(address);
+		try {
+			client.setTask("tc");
+			assertTrue(client.isInteractive());
+			//Batches of different sizes, each mapping i to i + offset, from 4 threads
+			final List<List<Mapping>> batches = new ArrayList<List<Mapping>>();
+			final List<Future<boolean[]>> answers = new ArrayList<Future<boolean[]>>();
+			for (int b = 0; b < 40; b++) {
+				List<Mapping> batch = new ArrayList<Mapping>();
+				for (int i = 0; i < 1 + b % 7; i++)
+					batch.add(new Mapping("http://source#e" + ((b + i) % 50), "http://target#e" + ((b + i + b % 2) % 50),
+							Relation.EQUIVALENCE));
+				batches.add(batch);
+				answers.add(null);
+			}
+			Thread[] threads = new Thread[4];
+			final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+			for (int t = 0; t < threads.length; t++) {
+				final int first = t;
+				threads[t] = new Thread(new Runnable() {
+					public void run() {
+						try {
+							for (int b = first; b < batches.size(); b += 4) {
+								Future<boolean[]> f = client.submit(batches.get(b));
+								synchronized (answers) {
+									answers.set(b, f);
+								}
+							}
+						} catch (IOException e) {
+							failure.compareAndSet(null, e);
+						}
+					}
+				});
+				threads[t].start();
+			}
+			for (Thread t : threads)
+				t.join();
+			if (failure.get() != null)
+				throw failure.get();
+			int requests = 0;
+			for (int b = 0; b < batches.size(); b++) {
+				boolean[] correct = answers.get(b).get(10, TimeUnit.SECONDS);
+				assertEquals(batches.get(b).size(), correct.length);
+				for (int i = 0; i < correct.length; i++)
+					assertEquals("batch " + b, b % 2 == 0, correct[i]);
+				requests += correct.length;
+			}
+			//A group of conflicting mappings, and the Oracle's reference
+			Set<Mapping> group = new HashSet<Mapping>();
+			Mapping right = new Mapping("http://source#e7", "http://target#e7", Relation.EQUIVALENCE);
+			group.add(right);
+			group.add(new Mapping("http://source#e7", "http://target#e8", Relation.EQUIVALENCE));
+			Set<Mapping> positive = client.check(group);
+			assertEquals(1, positive.size());
+			assertTrue(positive.contains(right));
+			assertEquals(requests + 1, session.getCount());
+			assertEquals(reference.size(), client.getOracleReference().size());
+		} finally {
+			client.close();
+			Oracle.endTask(session);
+			Oracle.endSuite();
+		}
+	}
+	
+	/**
+	 * The time the simulated user takes to answer the asynchronous queries, the
+	 * time the matcher waits for them and the time it overlaps them with other
+	 * work must be reported in the interactive results of each task and suite.
+	 */
+	@Test
+	public void testOracleAsyncTimes() throws Exception {
+		File folder = File.createTempFile("oracle", "");
+		folder.delete();
+		HashAlignment reference = new HashAlignment();
+		reference.add("http://source#e0", "http://target#e0", Relation.EQUIVALENCE);
+		Oracle.startSuite(0.0, folder.getPath(), 0, false, LatencyModel.parse("fixed:100"));
+		OracleSession session = Oracle.startTask(reference, "tc");
+		try {
+			long start = System.nanoTime();
+			Future<Boolean> answer = Oracle.checkAsync(new Mapping("http://source#e0", "http://target#e0", Relation.EQUIVALENCE));
+			//The matcher works for 60 ms before it needs the answer
+			Thread.sleep(60);
+			assertTrue(answer.get());
+			assertTrue(System.nanoTime() - start >= 100000000L);
+		} finally {
+			Oracle.endTask(session);
+			Oracle.endSuite();
+		}
+		List<String> lines = new ArrayList<String>();
+		File results = new File(folder, "interactive_results.txt");
+		BufferedReader reader = new BufferedReader(new FileReader(results));
+		String line;
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		reader.close();
+		for (File f : folder.listFiles())
+			f.delete();
+		folder.delete();
+		assertEquals(3, lines.size());
+		String[] header = lines.get(0).split("\t");
+		assertEquals("Overlapped Time (ms)", header[header.length - 1]);
+		for (String result : lines.subList(1, 3)) {
+			String[] columns = result.split("\t");
+			assertEquals(header.length, columns.length);
+			long user = Long.parseLong(columns[columns.length - 3]);
+			long idle = Long.parseLong(columns[columns.length - 2]);
+			long overlapped = Long.parseLong(columns[columns.length - 1]);
+			assertEquals(100, user);
+			//The matcher waited about 40 ms, and overlapped the rest
+			assertTrue(result, idle > 0 && idle <= 50);
+			assertTrue(result, overlapped >= 50 && Math.abs(user - idle - overlapped) <= 1);
+		}
+	}
+	
+	//Runs a suite of 40 test cases that take random times, up to 'threads' at a time,
+	//and returns the lines of its results file
+	private static List<String> runSuite(int threads) throws IOException, InterruptedException {
+		File folder = File.createTempFile("suite", "");
+		folder.delete();
+		folder.mkdir();
+		File results = new File(folder, "results.txt");
+		Journal journal = new Journal(new File(folder, "journal.txt"), false);
+		BlockingQueue<TestCase> prefetched = new ArrayBlockingQueue<TestCase>(41);
+		for (int i = 0; i < 40; i++) {
+			TestCase tc = new TestCase("tc" + i);
+			tc.prefetchTime = 1;
+			prefetched.put(tc);
+		}
+		TestCase end = new TestCase(null);
+		prefetched.put(end);
+		final Random random = new Random();
+		Client.runTestCases(prefetched, end, new Client.TestCaseRunner() {
+			public TestCase run(TestCase tc) {
+				int i = Integer.parseInt(tc.id.substring(2));
+				try {
+					Thread.sleep(random.nextInt(20));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				if (i == 13)
+					throw new IllegalStateException("Matcher failure");
+				tc.runTime = i;
+				tc.classification = new int[]{i % 7, i % 3, i % 5};
+				return tc;
+			}
+		}, threads, new BufferedWriter(new FileWriter(results)), journal, null);
+		journal.close();
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(results));
+		String line;
+		while ((line = reader.readLine()) != null)
+			lines.add(line);
+		reader.close();
+		new File(folder, "journal.txt").delete();
+		results.delete();
+		folder.delete();
+		return lines;
+	}
+	
 	
 }
\ No newline at end of file
@@ -0,0 +1,247 @@
+package eu.sealsproject.omt.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the DataCache against a local HTTP server that answers conditional
+ * requests: data items are downloaded once, revalidated with ETag or
+ * If-Modified-Since, stored by the hash of their contents (with the extension
+ * of their name), served from the cache in offline mode, and the index is
+ * compacted when the cache is opened.
+ *
+ * @author Daniel Faria
+ */
+public class DataCacheTest
+{
+	private HttpServer server;
+	private File folder;
+	//The contents and validators of the data items, by path
+	private HashMap<String,String> contents;
+	private HashMap<String,String> etags;
+	private HashMap<String,Long> modified;
+	//Number of data items sent in full
+	private AtomicInteger downloads;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		contents = new HashMap<String,String>();
+		etags = new HashMap<String,String>();
+		modified = new HashMap<String,Long>();
+		downloads = new AtomicInteger(0);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler()
+		{
+			@Override
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				serve(exchange);
+			}
+		});
+		server.start();
+		folder = File.createTempFile("cache", "");
+		folder.delete();
+	}
+
+	@After
+	public void tearDown()
+	{
+		server.stop(0);
+		delete(folder);
+	}
+
+	@Test
+	public void testRevalidation() throws IOException
+	{
+		put("/cmt.owl", "<cmt/>", "\"v1\"", 0);
+		put("/ekaw.rdf", "<ekaw/>", null, 1500000000000L);
+		DataCache cache = new DataCache(folder, false);
+		URL cmt = cache.resolve(url("/cmt.owl"));
+		URL ekaw = cache.resolve(url("/ekaw.rdf"));
+		assertEquals(2, downloads.get());
+		assertEquals("<cmt/>", read(cmt));
+		assertEquals(hash("<cmt/>") + ".owl", new File(cmt.getPath()).getName());
+		assertEquals(hash("<ekaw/>") + ".rdf", new File(ekaw.getPath()).getName());
+		//Unchanged items are revalidated (with If-None-Match and If-Modified-Since) but not downloaded
+		assertEquals(cmt, cache.resolve(url("/cmt.owl")));
+		assertEquals(ekaw, cache.resolve(url("/ekaw.rdf")));
+		assertEquals(2, downloads.get());
+		//Changed items are downloaded again, into a new object
+		put("/cmt.owl", "<cmt version=\"2\"/>", "\"v2\"", 0);
+		put("/ekaw.rdf", "<ekaw version=\"2\"/>", null, 1600000000000L);
+		URL cmt2 = cache.resolve(url("/cmt.owl"));
+		assertEquals("<cmt version=\"2\"/>", read(cmt2));
+		assertFalse(cmt.equals(cmt2));
+		assertEquals("<ekaw version=\"2\"/>", read(cache.resolve(url("/ekaw.rdf"))));
+		assertEquals(4, downloads.get());
+		//Missing items aren't cached
+		assertNull(cache.resolve(url("/missing.owl")));
+		assertNull(cache.resolve(null));
+	}
+
+	@Test
+	public void testContentHash() throws IOException
+	{
+		put("/conference/cmt.owl", "<cmt/>", "\"a\"", 0);
+		put("/copy/cmt.owl", "<cmt/>", "\"b\"", 0);
+		DataCache cache = new DataCache(folder, false);
+		URL a = cache.resolve(url("/conference/cmt.owl"));
+		URL b = cache.resolve(url("/copy/cmt.owl"));
+		assertEquals(a, b);
+		assertEquals(1, new File(folder, "objects").list().length);
+	}
+
+	@Test
+	public void testOffline() throws IOException
+	{
+		put("/cmt.owl", "<cmt/>", "\"v1\"", 0);
+		put("/ekaw.owl", "<ekaw/>", "\"v1\"", 0);
+		URL cmt = new DataCache(folder, false).resolve(url("/cmt.owl"));
+		server.stop(0);
+		DataCache cache = new DataCache(folder, true);
+		assertTrue(cache.isOffline());
+		assertEquals(cmt, cache.resolve(url("/cmt.owl")));
+		assertNull(cache.resolve(url("/ekaw.owl")));
+	}
+
+	@Test
+	public void testCompaction() throws IOException
+	{
+		DataCache cache = new DataCache(folder, false);
+		for(int i = 0; i < 10; i++)
+		{
+			put("/cmt.owl", "<cmt version=\"" + i + "\"/>", "\"v" + i + "\"", 0);
+			put("/ekaw.owl", "<ekaw/>", "\"v" + i + "\"", 0);
+			cache.resolve(url("/cmt.owl"));
+			cache.resolve(url("/ekaw.owl"));
+			//Superseded lines are never more than half of the index
+			assertTrue(lines() <= 4);
+		}
+		new DataCache(folder, true);
+		assertEquals(2, lines());
+		assertEquals("<cmt version=\"9\"/>", read(new DataCache(folder, true).resolve(url("/cmt.owl"))));
+	}
+
+	//Sets the contents and validators of a data item
+	private synchronized void put(String path, String content, String etag, long lastModified)
+	{
+		contents.put(path, content);
+		etags.put(path, etag);
+		modified.put(path, lastModified);
+	}
+
+	//Answers a request, with 304 if the client's validators match
+	private void serve(HttpExchange exchange) throws IOException
+	{
+		String path = exchange.getRequestURI().getPath();
+		String content;
+		String etag;
+		long lastModified;
+		synchronized(this)
+		{
+			content = contents.get(path);
+			etag = etags.get(path);
+			lastModified = modified.containsKey(path) ? modified.get(path) : 0;
+		}
+		InputStream in = exchange.getRequestBody();
+		in.close();
+		if(content == null)
+		{
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+		String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+		if(etag != null)
+			exchange.getResponseHeaders().set("ETag", etag);
+		if(lastModified > 0)
+			exchange.getResponseHeaders().set("Last-Modified", httpDate(lastModified));
+		if(etag != null ? etag.equals(ifNoneMatch) :
+				lastModified > 0 && ifModifiedSince != null && ifModifiedSince.equals(httpDate(lastModified)))
+		{
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+		downloads.incrementAndGet();
+		byte[] body = content.getBytes("UTF-8");
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	private URL url(String path) throws IOException
+	{
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	private int lines() throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new FileReader(new File(folder, "index.txt")));
+		int n = 0;
+		while(reader.readLine() != null)
+			n++;
+		reader.close();
+		return n;
+	}
+
+	private static String httpDate(long time)
+	{
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(time));
+	}
+
+	private static String hash(String content) throws IOException
+	{
+		return Helper.toHex(Helper.newDigest().digest(content.getBytes("UTF-8")));
+	}
+
+	private static String read(URL url) throws IOException
+	{
+		InputStream in = url.openStream();
+		StringBuilder s = new StringBuilder();
+		int b;
+		while((b = in.read()) >= 0)
+			s.append((char)b);
+		in.close();
+		return s.toString();
+	}
+
+	private static void delete(File f)
+	{
+		File[] children = f.listFiles();
+		if(children != null)
+			for(File c : children)
+				delete(c);
+		f.delete();
+	}
+}
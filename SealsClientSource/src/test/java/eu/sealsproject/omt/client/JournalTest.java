@@ -0,0 +1,113 @@
+package eu.sealsproject.omt.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+
+import org.junit.Test;
+
+/**
+ * Checks that a suite run can be resumed from a journal whose last line was
+ * cut off (as when the Client is killed while writing it) or which has a
+ * corrupt line: those lines are skipped, and the others are read back as
+ * they were written.
+ *
+ * @author Daniel Faria
+ */
+public class JournalTest
+{
+	@Test
+	public void testResumeTruncated() throws IOException
+	{
+		File file = File.createTempFile("journal", ".txt");
+		try
+		{
+			Journal journal = new Journal(file, false);
+			for(int i = 0; i < 5; i++)
+				journal.append(testCase(i));
+			journal.close();
+			//A corrupt line, with the right number of columns
+			FileWriter writer = new FileWriter(file, true);
+			writer.append("tc5\t12x\t3\t-\t-\t-\t-\t-\t-\t-\t-\t-\t-\t-\n");
+			writer.close();
+			journal = new Journal(file, true);
+			journal.append(testCase(6));
+			journal.close();
+			//Cut off the last line after its 12th column
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			String text = new String(readAll(raf), "UTF-8");
+			int last = text.lastIndexOf('\n', text.length() - 2) + 1;
+			int cut = last;
+			for(int i = 0; i < 12; i++)
+				cut = text.indexOf('\t', cut) + 1;
+			raf.setLength(cut);
+			raf.close();
+
+			journal = new Journal(file, true);
+			assertEquals(5, journal.size());
+			for(int i = 0; i < 5; i++)
+				assertSame(testCase(i), journal.get("tc" + i));
+			assertNull(journal.get("tc5"));
+			assertNull(journal.get("tc6"));
+			//The test cases appended after resuming are read back in the next resume
+			journal.append(testCase(6));
+			journal.close();
+			journal = new Journal(file, true);
+			assertEquals(6, journal.size());
+			assertSame(testCase(6), journal.get("tc6"));
+			journal.close();
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	//A completed test case, with or without the optional values
+	private static TestCase testCase(int i) throws IOException
+	{
+		TestCase tc = new TestCase("tc" + i);
+		tc.runTime = 1000 + i;
+		tc.prefetchTime = i;
+		if(i % 2 == 0)
+		{
+			tc.alignment = new URL("file:/tmp/tc" + i + ".rdf");
+			tc.hash = "0123456789abcdef" + i;
+			tc.classification = new int[]{i, 2 * i, 3};
+			tc.bestThreshold = 0.25 * i;
+			tc.bestF = 0.5;
+		}
+		else
+			tc.note = "No output alignment found";
+		if(i == 4)
+			tc.oracleClassification = new int[]{4, 0, 1};
+		return tc;
+	}
+
+	private static void assertSame(TestCase expected, TestCase actual)
+	{
+		assertEquals(expected.id, actual.id);
+		assertEquals(expected.runTime, actual.runTime);
+		assertEquals(expected.prefetchTime, actual.prefetchTime);
+		assertEquals(expected.alignment, actual.alignment);
+		assertEquals(expected.hash, actual.hash);
+		assertArrayEquals(expected.classification, actual.classification);
+		assertArrayEquals(expected.oracleClassification, actual.oracleClassification);
+		assertEquals(expected.note, actual.note);
+		assertEquals(expected.bestThreshold, actual.bestThreshold, 0);
+		assertEquals(expected.bestF, actual.bestF, 0);
+	}
+
+	private static byte[] readAll(RandomAccessFile raf) throws IOException
+	{
+		byte[] b = new byte[(int)raf.length()];
+		raf.readFully(b);
+		return b;
+	}
+}
@@ -0,0 +1,87 @@
+package eu.sealsproject.omt.client.interactive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the percentiles of the LatencyHistogram on known samples: exact
+ * below 16 microseconds, the upper bound of their bucket above that (within
+ * 1/16 of the exact percentile), and the same after merging histograms.
+ *
+ * @author Daniel Faria
+ */
+public class LatencyHistogramTest
+{
+	@Test
+	public void testSmallIntervals()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		assertEquals(0, h.percentile(50));
+		assertEquals("0\t0\t0\t0", h.summary());
+		for(int i = 15; i >= 0; i--)
+			h.record(i);
+		//Negative intervals count as 0
+		h.record(-5);
+		assertEquals(17, h.count());
+		assertEquals(15, h.max());
+		assertEquals(0, h.percentile(0));
+		assertEquals(0, h.percentile(10));
+		assertEquals(7, h.percentile(50));
+		assertEquals(14, h.percentile(90));
+		assertEquals(15, h.percentile(100));
+	}
+
+	@Test
+	public void testKnownPercentiles()
+	{
+		LatencyHistogram h = new LatencyHistogram();
+		for(int i = 1; i <= 100; i++)
+			h.record(i);
+		//50 is in [50,51], 90 in [88,91] and 99 in [96,99]
+		assertEquals(51, h.percentile(50));
+		assertEquals(91, h.percentile(90));
+		assertEquals(99, h.percentile(99));
+		assertEquals(100, h.percentile(100));
+		assertEquals("51\t91\t99\t100", h.summary());
+		//A single long interval
+		h = new LatencyHistogram();
+		h.record(1000000);
+		assertEquals(1000000, h.percentile(50));
+		assertEquals(1000000, h.max());
+	}
+
+	@Test
+	public void testRandomIntervals()
+	{
+		Random random = new Random(42);
+		LatencyHistogram h = new LatencyHistogram();
+		LatencyHistogram[] parts = {new LatencyHistogram(), new LatencyHistogram()};
+		long[] samples = new long[100000];
+		for(int i = 0; i < samples.length; i++)
+		{
+			//Log-uniform from 1 microsecond to about 17 minutes
+			samples[i] = (long)Math.exp(random.nextDouble() * Math.log(1e9));
+			h.record(samples[i]);
+			parts[i % 2].record(samples[i]);
+		}
+		LatencyHistogram merged = new LatencyHistogram();
+		merged.add(parts[0]);
+		merged.add(parts[1]);
+		Arrays.sort(samples);
+		assertEquals(samples[samples.length - 1], h.max());
+		for(double p : new double[]{1, 10, 25, 50, 75, 90, 99, 99.9})
+		{
+			long exact = samples[(int)Math.ceil(p / 100 * samples.length) - 1];
+			long estimate = h.percentile(p);
+			assertTrue(p + ": " + estimate + " < " + exact, estimate >= exact);
+			assertTrue(p + ": " + estimate + " > " + exact, estimate <= exact + exact / 16);
+			assertEquals(estimate, merged.percentile(p));
+		}
+		assertEquals(h.summary(), merged.summary());
+	}
+}
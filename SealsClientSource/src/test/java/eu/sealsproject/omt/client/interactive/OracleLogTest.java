@@ -0,0 +1,122 @@
+package eu.sealsproject.omt.client.interactive;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the OracleLog writes every record by the time it is closed,
+ * with the records of each task together (in the order in which they were
+ * logged) even when the tasks are logged concurrently and fill its queue,
+ * and that it drops the records that arrive after the end of their task or
+ * after it is closed.
+ *
+ * @author Daniel Faria
+ */
+public class OracleLogTest
+{
+	private static final int QUERIES = 6000;
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		folder = File.createTempFile("oracle", "");
+		folder.delete();
+		folder.mkdir();
+	}
+
+	@After
+	public void tearDown()
+	{
+		for(File f : folder.listFiles())
+			f.delete();
+		folder.delete();
+	}
+
+	@Test
+	public void testClose() throws IOException, InterruptedException
+	{
+		final OracleLog log = new OracleLog(folder, "Test Case ID\tRequests\n", true);
+		final OracleLog.Task[] tasks = {log.start("tc1"), log.start("tc2")};
+		//Both tasks log more records than the queue holds, at the same time
+		Thread[] threads = new Thread[tasks.length];
+		for(int t = 0; t < tasks.length; t++)
+		{
+			final int task = t;
+			threads[t] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for(int i = 0; i < QUERIES; i++)
+					{
+						log.query(tasks[task], "query " + i);
+						if(i % 10 == 0)
+							log.interval(tasks[task], i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for(Thread t : threads)
+			t.join();
+		log.end(tasks[0], "tc1\t" + QUERIES);
+		log.end(tasks[1], "tc2\t" + QUERIES);
+		log.query(tasks[0], "after end");
+		log.close("Global\t" + 2 * QUERIES);
+		//Records logged after the logs are closed are dropped without waiting
+		log.query(tasks[1], "after close");
+
+		List<String> expected = new ArrayList<String>();
+		List<String> intervals = new ArrayList<String>();
+		for(String id : new String[]{"tc1", "tc2"})
+		{
+			expected.add(id);
+			intervals.add(id);
+			for(int i = 0; i < QUERIES; i++)
+			{
+				expected.add("query " + i);
+				if(i % 10 == 0)
+					intervals.add(Integer.toString(i));
+			}
+		}
+		assertEquals(expected, lines("interactive_query_log.txt"));
+		assertEquals(intervals, lines("interactive_request_intervals.txt"));
+		List<String> results = lines("interactive_results.txt");
+		assertEquals(4, results.size());
+		assertEquals("Test Case ID\tRequests", results.get(0));
+		assertEquals("tc1\t" + QUERIES, results.get(1));
+		assertEquals("tc2\t" + QUERIES, results.get(2));
+		assertEquals("Global\t" + 2 * QUERIES, results.get(3));
+		//The temporary files of the tasks are gone
+		assertEquals(3, folder.list().length);
+	}
+
+	private List<String> lines(String name) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(new File(folder, name)), "UTF-8"));
+		List<String> lines = new ArrayList<String>();
+		try
+		{
+			String line;
+			while((line = reader.readLine()) != null)
+				lines.add(line);
+		}
+		finally
+		{
+			reader.close();
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,138 @@
+package eu.sealsproject.omt.client.interactive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sealsproject.omt.client.Relation;
+
+/**
+ * Checks that the OracleServer closes the connections that send malformed
+ * requests (an unknown operation, an invalid number of mappings, relation
+ * or URI index) instead of failing on them, and keeps serving the other
+ * connections. The pipelined round trip between an OracleClient and the
+ * server of a suite is checked in the ClientTest, which can start the suite.
+ *
+ * @author Daniel Faria
+ */
+public class OracleServerTest
+{
+	private OracleServer server;
+	private String host;
+	private int port;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		server = new OracleServer(0);
+		String address = server.getAddress();
+		host = address.substring(0, address.lastIndexOf(':'));
+		port = Integer.parseInt(address.substring(address.lastIndexOf(':') + 1));
+	}
+
+	@After
+	public void tearDown()
+	{
+		server.stop();
+	}
+
+	@Test
+	public void testProtocolErrors() throws IOException
+	{
+		//Unknown operation
+		assertClosed(new byte[]{42});
+		//Negative and too large numbers of mappings
+		assertClosed(check(-1));
+		assertClosed(check(OracleServer.MAX_BATCH + 1));
+		//Invalid relation
+		assertClosed(concat(check(1), uri("http://a#x"), uri("http://b#y"), new byte[]{(byte)Relation.values().length}));
+		assertClosed(concat(check(1), uri("http://a#x"), uri("http://b#y"), new byte[]{-1}));
+		//URI indexes that weren't sent, and negative indexes other than -1
+		assertClosed(concat(check(1), uri("http://a#x"), index(1), new byte[]{0}));
+		assertClosed(concat(check(1), index(-2)));
+		//The server still answers well-formed requests (with no session, every
+		//mapping is incorrect)
+		OracleClient client = new OracleClient(server.getAddress());
+		try
+		{
+			assertFalse(client.isInteractive());
+			assertArrayEquals(new boolean[2], client.checkAll(Arrays.asList(
+					new Mapping("http://a#x", "http://b#y", Relation.EQUIVALENCE),
+					new Mapping("http://a#x", "http://b#z", Relation.SUBSUMES))));
+		}
+		finally
+		{
+			client.close();
+		}
+	}
+
+	//Sends a request on a new connection and checks that the server closes it
+	//without a reply
+	private void assertClosed(byte[] request) throws IOException
+	{
+		Socket s = new Socket(host, port);
+		try
+		{
+			s.setSoTimeout(10000);
+			DataOutputStream out = new DataOutputStream(s.getOutputStream());
+			DataInputStream in = new DataInputStream(s.getInputStream());
+			out.writeInt(OracleServer.MAGIC);
+			out.flush();
+			assertEquals(OracleServer.MAGIC, in.readInt());
+			out.write(request);
+			out.flush();
+			assertEquals(-1, in.read());
+		}
+		finally
+		{
+			s.close();
+		}
+	}
+
+	//The start of a CHECK request for n mappings
+	private static byte[] check(int n)
+	{
+		return concat(new byte[]{OracleServer.CHECK}, index(n));
+	}
+
+	//A new URI, which takes the next index
+	private static byte[] uri(String uri) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(-1);
+		out.writeUTF(uri);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] index(int i)
+	{
+		return new byte[]{(byte)(i >>> 24), (byte)(i >>> 16), (byte)(i >>> 8), (byte)i};
+	}
+
+	private static byte[] concat(byte[]... parts)
+	{
+		int n = 0;
+		for(byte[] p : parts)
+			n += p.length;
+		byte[] b = new byte[n];
+		n = 0;
+		for(byte[] p : parts)
+		{
+			System.arraycopy(p, 0, b, n, p.length);
+			n += p.length;
+		}
+		return b;
+	}
+}
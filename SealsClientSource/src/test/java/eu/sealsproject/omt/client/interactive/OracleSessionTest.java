@@ -0,0 +1,266 @@
+package eu.sealsproject.omt.client.interactive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import eu.sealsproject.omt.client.HashAlignment;
+import eu.sealsproject.omt.client.Relation;
+
+/**
+ * Checks the Oracle sessions of interactive tasks: the requests and answers
+ * counted by a session queried concurrently by several threads of a tool,
+ * the simulated errors, which must be the same with the same seed however
+ * the queries are asked, the batches of queries, which are a single
+ * interaction but count a request per mapping (or per group of conflicting
+ * mappings), and the asynchronous queries, which are answered after the time
+ * the simulated user takes, of which only the time spent waiting for them is
+ * idle.
+ *
+ * @author Daniel Faria
+ */
+public class OracleSessionTest
+{
+	private static final int ENTITIES = 100;
+	private static final int THREADS = 8;
+
+	@Test
+	public void testConcurrentChecks() throws InterruptedException
+	{
+		final OracleSession session = new OracleSession(reference(), "tc", 0.0, 0, null, null);
+		final List<Mapping> queries = queries();
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[THREADS];
+		for(int i = 0; i < THREADS; i++)
+		{
+			final int seed = i;
+			threads[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						start.await();
+						//Each thread asks every query, in its own order and in
+						//either direction
+						List<Mapping> order = new ArrayList<Mapping>(queries);
+						Random random = new Random(seed);
+						Collections.shuffle(order, random);
+						for(Mapping m : order)
+						{
+							boolean correct = random.nextBoolean() ?
+									session.check(m.getSourceURI(), m.getTargetURI(), m.getRelation()) :
+									session.check(m.getTargetURI(), m.getSourceURI(), m.getRelation().reverse());
+							assertEquals(m.getSourceURI() + " " + m.getRelation() + " " + m.getTargetURI(), inReference(m), correct);
+						}
+					}
+					catch(Throwable t)
+					{
+						failure.compareAndSet(null, t);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for(Thread t : threads)
+			t.join();
+		if(failure.get() != null)
+			throw new AssertionError(failure.get());
+		//Every request is counted, but each distinct query is answered once
+		assertEquals(THREADS * queries.size(), session.getCount());
+		assertArrayEquals(new int[]{ENTITIES, 0}, session.getClassMatrix()[0]);
+		assertArrayEquals(new int[]{2 * ENTITIES, 0}, session.getClassMatrix()[1]);
+		assertEquals(THREADS * queries.size() - 1, session.getIntervals().count());
+	}
+
+	@Test
+	public void testSeededErrors() throws InterruptedException
+	{
+		List<Mapping> queries = queries();
+		boolean[] expected = answers(new OracleSession(reference(), "tc", 0.3, 42, null, null), queries, 1);
+		int flips = 0;
+		for(int i = 0; i < queries.size(); i++)
+			if(expected[i] != inReference(queries.get(i)))
+				flips++;
+		//About 30% of the answers are wrong
+		assertTrue(flips + " flips", flips > 0.2 * queries.size() && flips < 0.4 * queries.size());
+		//The same flips with the same seed, in other runs and from several threads
+		for(int run = 0; run < 3; run++)
+		{
+			assertArrayEquals(expected, answers(new OracleSession(reference(), "tc", 0.3, 42, null, null), queries, 1));
+			assertArrayEquals(expected, answers(new OracleSession(reference(), "tc", 0.3, 42, null, null), queries, THREADS));
+		}
+		//And other flips with another seed
+		assertFalse(Arrays.equals(expected, answers(new OracleSession(reference(), "tc", 0.3, 43, null, null), queries, 1)));
+	}
+
+	@Test
+	public void testBatches()
+	{
+		OracleSession session = new OracleSession(reference(), "tc", 0.0, 0, null, null);
+		List<Mapping> queries = queries();
+		session.check(source(0), target(0), Relation.EQUIVALENCE);
+		assertEquals(0, session.getIntervals().count());
+		//A batch is a single interaction (one interval) with a request per mapping
+		boolean[] correct = session.checkAll(queries.subList(3, 9));
+		for(int i = 0; i < correct.length; i++)
+			assertEquals(inReference(queries.get(3 + i)), correct[i]);
+		assertEquals(1, session.getIntervals().count());
+		assertEquals(7, session.getCount());
+		assertEquals(0, session.checkAll(new ArrayList<Mapping>()).length);
+		assertEquals(1, session.getIntervals().count());
+		//Groups of 2 or 3 conflicting mappings (sharing a source or a target)
+		//count as a single request
+		Set<Mapping> group = new HashSet<Mapping>(queries.subList(9, 12));
+		Set<Mapping> answer = session.check(group);
+		assertEquals(1, answer.size());
+		assertTrue(inReference(answer.iterator().next()));
+		assertEquals(8, session.getCount());
+		assertEquals(2, session.getIntervals().count());
+		group = new HashSet<Mapping>();
+		group.add(new Mapping(source(20), target(20), Relation.EQUIVALENCE));
+		group.add(new Mapping(source(21), target(20), Relation.EQUIVALENCE));
+		assertEquals(1, session.check(group).size());
+		assertEquals(9, session.getCount());
+		//Unrelated mappings, and larger groups, count a request per mapping
+		group = new HashSet<Mapping>();
+		group.add(new Mapping(source(30), target(30), Relation.EQUIVALENCE));
+		group.add(new Mapping(source(31), target(32), Relation.EQUIVALENCE));
+		assertEquals(1, session.check(group).size());
+		assertEquals(11, session.getCount());
+		group = new HashSet<Mapping>(queries.subList(120, 124));
+		assertEquals(2, session.check(group).size());
+		assertEquals(15, session.getCount());
+		assertEquals(5, session.getIntervals().count());
+		//Each query is answered (and classified) once, including those of the groups
+		int[][] matrix = session.getClassMatrix();
+		assertEquals(18, matrix[0][0] + matrix[0][1] + matrix[1][0] + matrix[1][1]);
+	}
+
+	@Test
+	public void testAsync() throws Exception
+	{
+		List<Mapping> queries = queries();
+		//Without a latency model, the answers are immediate
+		OracleSession session = new OracleSession(reference(), "tc", 0.0, 0, null, null);
+		Future<Boolean> answer = session.checkAsync(queries.get(0));
+		assertTrue(answer.isDone());
+		assertTrue(answer.get());
+		assertEquals(0, session.getUserTime());
+		//With a fixed latency, the answer is given after it, and the matcher is
+		//only idle while it waits in get()
+		session = new OracleSession(reference(), "tc", 0.0, 0, null, LatencyModel.parse("fixed:100"));
+		long start = System.nanoTime();
+		answer = session.checkAsync(queries.get(1));
+		Future<Boolean> other = session.checkAsync(queries.get(0));
+		assertFalse(answer.isDone());
+		Thread.sleep(40);
+		assertFalse(answer.get());
+		assertTrue(other.get());
+		long elapsed = (System.nanoTime() - start) / 1000;
+		assertTrue(elapsed + " us", elapsed >= 100000);
+		assertEquals(200000, session.getUserTime());
+		//The two answers overlapped each other and the 40 ms of work
+		long idle = session.getIdleTime();
+		assertTrue(idle + " us idle", idle > 0 && idle <= elapsed - 40000);
+		assertEquals(2, session.getCount());
+		//The synchronous queries are idle for their whole latency
+		long before = session.getIdleTime();
+		session.checkAll(queries.subList(2, 4));
+		assertTrue(session.getIdleTime() - before >= 200000);
+		assertEquals(400000, session.getUserTime());
+	}
+
+	//The answers of a session to the queries, asked by the given number of
+	//threads (each asking every query, from a different position)
+	private static boolean[] answers(final OracleSession session, final List<Mapping> queries, int threads)
+			throws InterruptedException
+	{
+		final boolean[] answers = new boolean[queries.size()];
+		Thread[] t = new Thread[threads];
+		for(int i = 0; i < threads; i++)
+		{
+			final int offset = i * queries.size() / threads;
+			t[i] = new Thread(new Runnable()
+			{
+				public void run()
+				{
+					for(int j = 0; j < queries.size(); j++)
+					{
+						int k = (offset + j) % queries.size();
+						Mapping m = queries.get(k);
+						boolean correct = session.check(m.getSourceURI(), m.getTargetURI(), m.getRelation());
+						//The answers of the first thread are kept (whichever
+						//thread asked each query first)
+						if(offset == 0)
+							answers[k] = correct;
+					}
+				}
+			});
+			t[i].start();
+		}
+		for(Thread thread : t)
+			thread.join();
+		return answers;
+	}
+
+	//The reference: each source entity is equivalent to the target entity
+	//with the same number
+	static HashAlignment reference()
+	{
+		HashAlignment a = new HashAlignment();
+		for(int i = 0; i < ENTITIES; i++)
+			a.add(source(i), target(i), Relation.EQUIVALENCE);
+		return a;
+	}
+
+	//The correct mapping of each source entity, the mapping to the next target
+	//entity and a mapping with the wrong relation
+	static List<Mapping> queries()
+	{
+		List<Mapping> queries = new ArrayList<Mapping>();
+		for(int i = 0; i < ENTITIES; i++)
+		{
+			queries.add(new Mapping(source(i), target(i), Relation.EQUIVALENCE));
+			queries.add(new Mapping(source(i), target(i + 1), Relation.EQUIVALENCE));
+			queries.add(new Mapping(source(i), target(i), Relation.SUBSUMES));
+		}
+		return queries;
+	}
+
+	static boolean inReference(Mapping m)
+	{
+		return m.getRelation() == Relation.EQUIVALENCE && m.getTargetURI().equals(target(number(m.getSourceURI())));
+	}
+
+	static String source(int i)
+	{
+		return "http://source#e" + i;
+	}
+
+	static String target(int i)
+	{
+		return "http://target#e" + i;
+	}
+
+	private static int number(String uri)
+	{
+		return Integer.parseInt(uri.substring(uri.indexOf("#e") + 2));
+	}
+}